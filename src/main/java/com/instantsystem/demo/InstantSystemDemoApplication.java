@@ -3,11 +3,11 @@ package com.instantsystem.demo;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
-import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
 
 @SpringBootApplication
 @EnableMongoRepositories
-@EnableWebMvc
+@EnableReactiveMongoRepositories
 public class InstantSystemDemoApplication {
 
     public static void main(String[] args) {
@@ -1,5 +1,8 @@
 package com.instantsystem.demo.config;
 
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.endpoint.web.servlet.WebMvcEndpointHandlerMapping;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import springfox.documentation.builders.PathSelectors;
@@ -17,4 +20,23 @@ public class SpringFoxConfig {
                 .paths(PathSelectors.any())
                 .build();
     }
+
+    /**
+     * Springfox only reads the handler mappings matching with the AntPathMatcher. The application mappings use it
+     * (see {@link WebConfig#configurePathMatch}) but the Actuator endpoints mapping is always given a PathPatternParser,
+     * it is unset before the mapping is initialized so it falls back to the AntPathMatcher too
+     * @return The post processor of the Actuator endpoints mapping
+     */
+    @Bean
+    public static BeanPostProcessor actuatorAntPathMatcherPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof WebMvcEndpointHandlerMapping) {
+                    ((WebMvcEndpointHandlerMapping) bean).setPatternParser(null);
+                }
+                return bean;
+            }
+        };
+    }
 }
@@ -0,0 +1,66 @@
+package com.instantsystem.demo.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the {@link WebClient} shared by all the calls made to the endpoints of the
+ * {@link com.instantsystem.demo.parking.entity.ParkingManager}, so connections (and TLS sessions) are kept alive and
+ * reused between two requests instead of being opened again for each call
+ */
+@Configuration
+public class WebClientConfig {
+
+    /**
+     * The pool of connections to the endpoints. Reactor Netty keeps one pool per remote host, the max connections is
+     * therefore a limit per host. The pool usage is published to Micrometer under reactor.netty.connection.provider
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider upstreamConnectionProvider(@Value("${upstream.http.max-connections-per-host:50}") int maxConnections,
+                                                         @Value("${upstream.http.pending-acquire-max-count:500}") int pendingAcquireMaxCount,
+                                                         @Value("${upstream.http.pending-acquire-timeout:5s}") Duration pendingAcquireTimeout,
+                                                         @Value("${upstream.http.max-idle-time:30s}") Duration maxIdleTime,
+                                                         @Value("${upstream.http.max-life-time:5m}") Duration maxLifeTime,
+                                                         @Value("${upstream.http.evict-in-background:1m}") Duration evictInBackground) {
+        return ConnectionProvider.builder("upstream")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInBackground)
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient upstreamWebClient(WebClient.Builder builder,
+                                       ConnectionProvider upstreamConnectionProvider,
+                                       @Value("${upstream.http.connect-timeout:2s}") Duration connectTimeout,
+                                       @Value("${upstream.http.read-timeout:10s}") Duration readTimeout,
+                                       @Value("${upstream.http.response-timeout:10s}") Duration responseTimeout,
+                                       @Value("${upstream.http.max-in-memory-size:10MB}") DataSize maxInMemorySize) {
+        HttpClient httpClient = HttpClient.create(upstreamConnectionProvider)
+                .keepAlive(true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout)
+                .doOnConnected(connection -> connection.addHandlerLast(new ReadTimeoutHandler(readTimeout.toMillis(), TimeUnit.MILLISECONDS)));
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                // City feeds can weigh a few megabytes, way above the 256KB default
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes()))
+                .build();
+    }
+}
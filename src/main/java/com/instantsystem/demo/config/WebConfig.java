@@ -1,15 +1,75 @@
 package com.instantsystem.demo.config;
 
+import com.instantsystem.demo.util.TimedJackson2HttpMessageConverter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Servlet (Spring MVC) configuration, not loaded when the application runs in reactive mode
+ * (spring.main.web-application-type=reactive). {@link EnableWebMvc} turns off the Spring MVC auto-configuration, the
+ * spring.mvc.* properties are not read and are configured here instead
+ */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebMvc
-public class WebConfig {
+public class WebConfig implements WebMvcConfigurer {
+
+    private final MeterRegistry meterRegistry;
+
+    private final Duration asyncRequestTimeout;
+
+    public WebConfig(MeterRegistry meterRegistry, @Value("${parking.async.request-timeout:30s}") Duration asyncRequestTimeout) {
+        this.meterRegistry = meterRegistry;
+        this.asyncRequestTimeout = asyncRequestTimeout;
+    }
+
     @Bean
     public InternalResourceViewResolver defaultViewResolver() {
         return new InternalResourceViewResolver();
     }
+
+    /**
+     * Match the mappings with the {@link AntPathMatcher}, the only one Springfox can document (see {@link SpringFoxConfig})
+     */
+    @Override
+    public void configurePathMatch(PathMatchConfigurer configurer) {
+        configurer.setPathMatcher(new AntPathMatcher());
+    }
+
+    /**
+     * Close the async requests (Mono) not answered after the timeout. The streams (Flux as SSE or NDJSON) are written
+     * by Spring MVC through an emitter with no timeout, they are not closed
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(asyncRequestTimeout.toMillis());
+    }
+
+    /**
+     * Replace the Jackson converter by one timing the serialization of the responses (parking.serialization metric)
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        Timer timer = Timer.builder("parking.serialization")
+                .description("Serialization of the responses to JSON")
+                .register(meterRegistry);
+        converters.replaceAll(converter -> converter.getClass() == MappingJackson2HttpMessageConverter.class
+                ? new TimedJackson2HttpMessageConverter(((MappingJackson2HttpMessageConverter) converter).getObjectMapper(), timer)
+                : converter);
+    }
 }
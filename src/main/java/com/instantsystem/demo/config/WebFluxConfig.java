@@ -0,0 +1,63 @@
+package com.instantsystem.demo.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instantsystem.demo.util.TimedJackson2JsonEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.embedded.netty.NettyRouteProvider;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.stream.Collectors;
+
+/**
+ * Reactive (WebFlux) configuration, only loaded when the application runs in reactive mode
+ * (spring.main.web-application-type=reactive)
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class WebFluxConfig implements WebFluxConfigurer {
+
+    private final ObjectMapper objectMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    public WebFluxConfig(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Serve on Netty. Tomcat is also on the classpath (servlet mode, web services) and Spring Boot would prefer it, the
+     * reactive server factories of Spring Boot are only created when there is none
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory(ObjectProvider<ReactorResourceFactory> resourceFactory,
+                                                                       ObjectProvider<NettyRouteProvider> routes,
+                                                                       ObjectProvider<NettyServerCustomizer> serverCustomizers) {
+        NettyReactiveWebServerFactory serverFactory = new NettyReactiveWebServerFactory();
+        resourceFactory.ifAvailable(serverFactory::setResourceFactory);
+        routes.orderedStream().forEach(serverFactory::addRouteProviders);
+        serverFactory.getServerCustomizers().addAll(serverCustomizers.orderedStream().collect(Collectors.toList()));
+        return serverFactory;
+    }
+
+    /**
+     * Replace the Jackson encoder by one timing the serialization of the responses (parking.serialization metric).
+     * Applied after the codecs customized by Spring Boot, which use the same {@link ObjectMapper}
+     */
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        Timer timer = Timer.builder("parking.serialization")
+                .description("Serialization of the responses to JSON")
+                .register(meterRegistry);
+        configurer.defaultCodecs().jackson2JsonEncoder(new TimedJackson2JsonEncoder(objectMapper, timer));
+    }
+}
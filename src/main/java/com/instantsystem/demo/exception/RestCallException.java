@@ -6,7 +6,27 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
 public class RestCallException extends RuntimeException {
 
+    private final boolean unavailable;
+
     public RestCallException(String message) {
+        this(message, false);
+    }
+
+    /**
+     * @param message       The message of the exception
+     * @param unavailable   true if the endpoint could not answer (timeout, connection error, 5xx, open circuit...),
+     *                      false if it answered the call was wrong (4xx)
+     */
+    public RestCallException(String message, boolean unavailable) {
         super(message);
+        this.unavailable = unavailable;
+    }
+
+    /**
+     * @return true if the endpoint could not answer, a previous response can be used instead. false if the call itself
+     *         is wrong, e.g. a misconfigured url, the error must be reported
+     */
+    public boolean isUnavailable() {
+        return unavailable;
     }
 }
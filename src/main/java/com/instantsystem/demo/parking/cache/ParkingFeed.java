@@ -0,0 +1,95 @@
+package com.instantsystem.demo.parking.cache;
+
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.RequestData;
+import com.instantsystem.demo.parking.mapper.ParkingExtractionPlan;
+import com.instantsystem.demo.util.HttpValidators;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link Parking} extracted from the response of one endpoint of a city, only the fields of the mapper of the
+ * endpoint are set. It is kept in the {@link ParkingSnapshot} so the next build of the city can reuse it while it is
+ * fresh according to the maxAge of its {@link RequestData}, or when the endpoint answers its response did not change
+ * (see {@link HttpValidators}). When the endpoint fails the previous feed is used again, marked as stale
+ */
+public class ParkingFeed {
+
+    private final RequestData requestData;
+
+    private final ParkingExtractionPlan plan;
+
+    private final List<Parking> parkings;
+
+    private final Instant fetchedAt;
+
+    private final HttpValidators validators;
+
+    private final boolean stale;
+
+    public ParkingFeed(RequestData requestData, ParkingExtractionPlan plan, List<Parking> parkings, Instant fetchedAt) {
+        this(requestData, plan, parkings, fetchedAt, null);
+    }
+
+    public ParkingFeed(RequestData requestData, ParkingExtractionPlan plan, List<Parking> parkings, Instant fetchedAt, HttpValidators validators) {
+        this(requestData, plan, parkings, fetchedAt, validators, false);
+    }
+
+    private ParkingFeed(RequestData requestData, ParkingExtractionPlan plan, List<Parking> parkings, Instant fetchedAt, HttpValidators validators, boolean stale) {
+        this.requestData = requestData;
+        this.plan = plan;
+        this.parkings = Collections.unmodifiableList(parkings);
+        this.fetchedAt = fetchedAt;
+        this.validators = validators;
+        this.stale = stale;
+    }
+
+    /**
+     * @return  The same feed marked as stale, used again because the endpoint failed
+     */
+    public ParkingFeed asStale() {
+        return stale ? this : new ParkingFeed(requestData, plan, parkings, fetchedAt, validators, true);
+    }
+
+    /**
+     * Check if the feed can be reused instead of calling the endpoint again
+     * @param now   The time of the build
+     * @return true if the endpoint has a maxAge and it is not passed, false otherwise
+     */
+    public boolean isFresh(Instant now) {
+        Long maxAge = requestData.getMaxAge();
+        return maxAge != null && maxAge > 0 && fetchedAt.plusSeconds(maxAge).isAfter(now);
+    }
+
+    public RequestData getRequestData() {
+        return requestData;
+    }
+
+    public ParkingExtractionPlan getPlan() {
+        return plan;
+    }
+
+    public List<Parking> getParkings() {
+        return parkings;
+    }
+
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * @return  The {@link HttpValidators} of the response the parkings were extracted from, null if unknown
+     */
+    public HttpValidators getValidators() {
+        return validators;
+    }
+
+    /**
+     * @return true if the endpoint failed and the parkings are the ones fetched at fetchedAt
+     */
+    public boolean isStale() {
+        return stale;
+    }
+}
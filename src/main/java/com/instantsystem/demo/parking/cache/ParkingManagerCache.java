@@ -0,0 +1,213 @@
+package com.instantsystem.demo.parking.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache of the {@link ParkingManager} by city, so the parking requests don't reach the DB. The writes on the
+ * {@link ParkingManager} go through the cache (see {@link com.instantsystem.demo.parking.service.ParkingManagerService}),
+ * the expiration only covers the changes made directly in the DB. The number of cities kept is bounded, the least used
+ * are removed first.
+ * Concurrent lookups of a city missing from the cache wait for the same load. A load still running when its city is
+ * written or removed is not cached once done, so it can't bring back an outdated {@link ParkingManager}.
+ * The cities without {@link ParkingManager} are also kept for a short time, so unknown or misspelled cities don't
+ * query the DB on each request. Their number is bounded, the least used are removed first.
+ * The lookups are counted by result (hit, unknown_hit, miss) in the parking.manager.cache.lookups metric.
+ */
+@Component
+public class ParkingManagerCache {
+
+    private final AsyncCache<String, ParkingManager> managers;
+
+    private final Cache<String, Boolean> unknownCities;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder unknownHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public ParkingManagerCache(@Value("${parking.manager-cache.expire-after:10m}") Duration expireAfter,
+                               @Value("${parking.manager-cache.max-cities:10000}") long maxCities,
+                               @Value("${parking.manager-cache.unknown-expire-after:30s}") Duration unknownExpireAfter,
+                               @Value("${parking.manager-cache.max-unknown-cities:10000}") long maxUnknownCities,
+                               MeterRegistry meterRegistry) {
+        this.managers = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfter)
+                .maximumSize(maxCities)
+                // The blocking loads run in the thread of their request, like the DB calls they replace
+                .executor(Runnable::run)
+                .buildAsync();
+        this.unknownCities = Caffeine.newBuilder()
+                .expireAfterWrite(unknownExpireAfter)
+                .maximumSize(maxUnknownCities)
+                .build();
+        registerLookups(meterRegistry, "hit", hits);
+        registerLookups(meterRegistry, "unknown_hit", unknownHits);
+        registerLookups(meterRegistry, "miss", misses);
+    }
+
+    private static void registerLookups(MeterRegistry meterRegistry, String result, LongAdder lookups) {
+        FunctionCounter.builder("parking.manager.cache.lookups", lookups, LongAdder::sum)
+                .description("Lookups of the ParkingManager of a city")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Retrieve the {@link ParkingManager} of a city, load it if it is not in the cache. Concurrent loads of the same
+     * city are done once
+     * @param city      The city of the {@link ParkingManager}
+     * @param loader    Load the {@link ParkingManager} from the DB, returns null if the city doesn't exist
+     * @return  The {@link ParkingManager}, null if the city doesn't exist
+     */
+    public ParkingManager get(String city, Function<String, ParkingManager> loader) {
+        if (unknownCities.getIfPresent(city) != null) {
+            unknownHits.increment();
+            return null;
+        }
+        boolean[] loading = {false};
+        ParkingManager parkingManager = managers.synchronous().get(city, c -> {
+            loading[0] = true;
+            return loader.apply(c);
+        });
+        if (!loading[0]) {
+            hits.increment();
+            return parkingManager;
+        }
+        misses.increment();
+        if (parkingManager == null) {
+            unknownCities.put(city, Boolean.TRUE);
+        }
+        return parkingManager;
+    }
+
+    /**
+     * Retrieve the {@link ParkingManager} of a city without blocking, load it if it is not in the cache. Concurrent
+     * loads of the same city are done once
+     * @param city      The city of the {@link ParkingManager}
+     * @param loader    Load the {@link ParkingManager} from the DB, empty if the city doesn't exist
+     * @return  A {@link Mono} of the {@link ParkingManager}, empty if the city doesn't exist
+     */
+    public Mono<ParkingManager> getAsync(String city, Function<String, Mono<ParkingManager>> loader) {
+        return Mono.defer(() -> {
+            if (unknownCities.getIfPresent(city) != null) {
+                unknownHits.increment();
+                return Mono.empty();
+            }
+            boolean[] loading = {false};
+            CompletableFuture<ParkingManager> parkingManager = managers.get(city, (c, executor) -> {
+                loading[0] = true;
+                return loader.apply(c).toFuture();
+            });
+            if (!loading[0]) {
+                hits.increment();
+                // A cancelled request must not cancel the load shared with the other requests
+                return Mono.fromCompletionStage(parkingManager.copy());
+            }
+            misses.increment();
+            return Mono.fromCompletionStage(parkingManager.copy())
+                    .switchIfEmpty(Mono.fromRunnable(() -> unknownCities.put(city, Boolean.TRUE)));
+        });
+    }
+
+    /**
+     * Retrieve the {@link ParkingManager} of several cities without blocking, the cities not in the cache are loaded
+     * together with a single call of the loader. The cities already being loaded are waited for, not loaded again
+     * @param cities    The cities of the {@link ParkingManager}
+     * @param loader    Load the {@link ParkingManager} of the given cities from the DB, the cities that don't exist are
+     *                  not emitted
+     * @return  A {@link Mono} of the {@link ParkingManager} by city, without the cities that don't exist
+     */
+    public Mono<Map<String, ParkingManager>> getAllAsync(Collection<String> cities, Function<Collection<String>, Flux<ParkingManager>> loader) {
+        return Mono.defer(() -> {
+            Set<String> known = new HashSet<>();
+            for (String city : cities) {
+                if (unknownCities.getIfPresent(city) != null) {
+                    unknownHits.increment();
+                } else {
+                    known.add(city);
+                }
+            }
+            if (known.isEmpty()) {
+                return Mono.just(new HashMap<>());
+            }
+            Set<String> missing = new HashSet<>();
+            CompletableFuture<Map<String, ParkingManager>> found = managers.getAll(known, (keys, executor) -> {
+                keys.forEach(missing::add);
+                return loader.apply(missing).collectMap(ParkingManager::getCity).toFuture();
+            });
+            hits.add(known.size() - missing.size());
+            misses.add(missing.size());
+            return Mono.fromCompletionStage(found.copy())
+                    .doOnNext(loaded -> missing.stream()
+                            .filter(city -> !loaded.containsKey(city))
+                            .forEach(city -> unknownCities.put(city, Boolean.TRUE)));
+        });
+    }
+
+    /**
+     * Set the {@link ParkingManager} of a city after it was created or updated
+     * @param parkingManager    The {@link ParkingManager} as saved in DB
+     */
+    public void put(ParkingManager parkingManager) {
+        unknownCities.invalidate(parkingManager.getCity());
+        managers.put(parkingManager.getCity(), CompletableFuture.completedFuture(parkingManager));
+    }
+
+    /**
+     * Remove the {@link ParkingManager} of a city after it was deleted
+     * @param city  The city of the {@link ParkingManager}
+     */
+    public void invalidate(String city) {
+        managers.synchronous().invalidate(city);
+        unknownCities.invalidate(city);
+    }
+
+    /**
+     * Remove all the {@link ParkingManager} and unknown cities
+     */
+    public void invalidateAll() {
+        managers.synchronous().invalidateAll();
+        unknownCities.invalidateAll();
+    }
+
+    /**
+     * @return  The number of lookups answered with a cached {@link ParkingManager}, or waiting for its running load
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return  The number of lookups answered with a cached unknown city
+     */
+    public long getUnknownHitCount() {
+        return unknownHits.sum();
+    }
+
+    /**
+     * @return  The number of lookups that reached the DB
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+}
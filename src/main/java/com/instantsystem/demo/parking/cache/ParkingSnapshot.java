@@ -0,0 +1,213 @@
+package com.instantsystem.demo.parking.cache;
+
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.RequestData;
+import com.instantsystem.demo.parking.index.ParkingSpatialIndex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All the {@link Parking} of a city as built from its endpoints at a given time. A snapshot is shared between all the
+ * requests on the city, it is never modified once built. The {@link ParkingFeed} of each endpoint are kept to be reused
+ * by the next build, the parkings are indexed by position for the range queries and by name and id for the lookups.
+ * The version of a snapshot is a hash of its parkings, two builds with the same parkings have the same version. A stale
+ * snapshot also hashes the time it is stale since, so a client holding the fresh version is not told it is unchanged.
+ * A snapshot built while some endpoints failed reuses their previous feeds, it is stale since the oldest of them
+ */
+public class ParkingSnapshot {
+
+    private final String city;
+
+    private final List<Parking> parkings;
+
+    private final List<ParkingFeed> feeds;
+
+    private final ParkingSpatialIndex spatialIndex;
+
+    private final Map<String, Parking> parkingsByName;
+
+    private final Map<String, Parking> parkingsById;
+
+    private final Instant builtAt;
+
+    private final String version;
+
+    private final Instant staleSince;
+
+    public ParkingSnapshot(String city, List<Parking> parkings, Instant builtAt) {
+        this(city, parkings, Collections.emptyList(), builtAt);
+    }
+
+    public ParkingSnapshot(String city, List<Parking> parkings, List<ParkingFeed> feeds, Instant builtAt) {
+        this.city = city;
+        this.parkings = Collections.unmodifiableList(parkings);
+        this.feeds = Collections.unmodifiableList(feeds);
+        this.spatialIndex = new ParkingSpatialIndex(this.parkings);
+        this.parkingsByName = new HashMap<>(parkings.size() * 2);
+        this.parkingsById = new HashMap<>(parkings.size() * 2);
+        for (Parking parking : parkings) {
+            // The first parking of the list wins when names are shared
+            if (parking.getName() != null) {
+                parkingsByName.putIfAbsent(parking.getName(), parking);
+            }
+            parkingsById.putIfAbsent(parking.getId(), parking);
+        }
+        this.builtAt = builtAt;
+        Instant oldestStale = null;
+        for (ParkingFeed feed : feeds) {
+            if (feed.isStale() && (oldestStale == null || feed.getFetchedAt().isBefore(oldestStale))) {
+                oldestStale = feed.getFetchedAt();
+            }
+        }
+        this.staleSince = oldestStale;
+        this.version = contentVersion(this.parkings, this.staleSince);
+    }
+
+    /**
+     * Retrieve the {@link ParkingFeed} of an endpoint
+     * @param requestData   The {@link RequestData} of the endpoint
+     * @return  The {@link ParkingFeed}, null if the endpoint was not part of this snapshot
+     */
+    public ParkingFeed getFeed(RequestData requestData) {
+        for (ParkingFeed feed : feeds) {
+            if (feed.getRequestData().equals(requestData)) {
+                return feed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieve a {@link Parking} by its name
+     * @param name  The name of the parking
+     * @return  The {@link Parking}, null if there is no parking with this name
+     */
+    public Parking getParkingByName(String name) {
+        return parkingsByName.get(name);
+    }
+
+    /**
+     * Retrieve a {@link Parking} by its id, as given by the endpoints of the city
+     * @param id    The id of the parking
+     * @return  The {@link Parking}, null if there is no parking with this id
+     */
+    public Parking getParkingById(String id) {
+        return parkingsById.get(id);
+    }
+
+    /**
+     * Retrieve the parkings that are new or changed since a previous snapshot of the city
+     * @param previous  The previous snapshot
+     * @return  The new or changed {@link Parking}, in the order of this snapshot
+     */
+    public List<Parking> getChangedSince(ParkingSnapshot previous) {
+        List<Parking> changed = new ArrayList<>();
+        for (Parking parking : parkings) {
+            if (!parking.equals(previous.getParkingById(parking.getId()))) {
+                changed.add(parking);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Retrieve the ids of the parkings of a previous snapshot of the city that are no longer in this one
+     * @param previous  The previous snapshot
+     * @return  The ids of the removed {@link Parking}
+     */
+    public List<String> getRemovedSince(ParkingSnapshot previous) {
+        List<String> removed = new ArrayList<>();
+        for (String id : previous.parkingsById.keySet()) {
+            if (!parkingsById.containsKey(id)) {
+                removed.add(id);
+            }
+        }
+        return removed;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public List<Parking> getParkings() {
+        return parkings;
+    }
+
+    public List<ParkingFeed> getFeeds() {
+        return feeds;
+    }
+
+    public ParkingSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    public Instant getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * @return  The time the oldest stale feed of the snapshot was fetched at, null if all the endpoints answered
+     */
+    public Instant getStaleSince() {
+        return staleSince;
+    }
+
+    /**
+     * @return  The hash of the parkings of the snapshot and of its staleness, as 32 hexadecimal characters
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Hash all the fields of the parkings in their order, with SHA-256 so a change is never missed because of a
+     * collision. The staleness is only hashed when set, a fresh snapshot keeps the version of its parkings
+     */
+    private static String contentVersion(List<Parking> parkings, Instant staleSince) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+        for (Parking parking : parkings) {
+            updateDigest(digest, parking.getId());
+            updateDigest(digest, parking.getName());
+            updateDigest(digest, parking.getCity());
+            updateDigest(digest, parking.getNbPlaces());
+            updateDigest(digest, parking.getNbPlacesRemaining());
+            updateDigest(digest, parking.getDescription());
+            updateDigest(digest, parking.getPosition() == null ? null : parking.getPosition().getLatitude());
+            updateDigest(digest, parking.getPosition() == null ? null : parking.getPosition().getLongitude());
+        }
+        if (staleSince != null) {
+            updateDigest(digest, staleSince);
+        }
+        byte[] hash = digest.digest();
+        StringBuilder version = new StringBuilder(32);
+        for (int i = 0; i < 16; i++) {
+            version.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return version.toString();
+    }
+
+    private static void updateDigest(MessageDigest digest, Object field) {
+        // A null field and the "null" string must not give the same hash
+        if (field == null) {
+            digest.update((byte) 0);
+        } else {
+            digest.update((byte) 1);
+            digest.update(field.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.instantsystem.demo.parking.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.instantsystem.demo.parking.event.ParkingManagerChangedEvent;
+import com.instantsystem.demo.parking.exception.NonExistingParkingManagerException;
+import com.instantsystem.demo.parking.service.ParkingSnapshotService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of the {@link ParkingSnapshot} by city, so the endpoints of a city are called depending on the number of cities
+ * and not on the number of requests we receive.
+ * Once the refresh delay is passed the snapshot is still returned right away, and rebuilt in background. Only a
+ * snapshot older than the expiration delay (not requested for a long time, or failing to refresh) is rebuilt while the
+ * request waits. A refresh is given the previous snapshot, so the endpoints with a fresh response (see
+ * {@link com.instantsystem.demo.parking.entity.RequestData#getMaxAge()}) are not called again. The cache size is
+ * bounded by the total number of parkings of all the cities.
+ * A city is built once at a time: the loads, the refreshes (in background, by the streams or by the polling) and the
+ * requests waiting for them share the build running for the city. A build of a city invalidated meanwhile, e.g. whose
+ * ParkingManager changed, is neither cached nor published.
+ * Each new snapshot, built by the cache or published with {@link #put}, is also emitted to the subscribers of
+ * {@link #getUpdates()}. The last snapshot of each city is kept after its expiration, so a city rebuilt while its
+ * endpoints fail can still be served from its previous feeds.
+ * The cache statistics are published under the parking.snapshots cache name, and the number of parkings of each built
+ * city in the parking.city.parkings gauge.
+ */
+@Component
+public class ParkingSnapshotCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingSnapshotCache.class.getName());
+
+    /**
+     * Both caches are bounded by the number of parkings, a city without parking still counts for one
+     */
+    private static final Weigher<String, ParkingSnapshot> PARKINGS_WEIGHER = (city, snapshot) -> Math.max(1, snapshot.getParkings().size());
+
+    private final AsyncLoadingCache<String, ParkingSnapshot> snapshots;
+
+    private final Cache<String, ParkingSnapshot> lastKnownGood;
+
+    private final Executor refreshExecutor;
+
+    private final BiFunction<String, ParkingSnapshot, Mono<ParkingSnapshot>> loader;
+
+    private final Scheduler scheduler;
+
+    /**
+     * The build running for each city, Caffeine only shares the loads of a missing city and not its refreshes
+     */
+    private final Map<String, CompletableFuture<ParkingSnapshot>> builds = new ConcurrentHashMap<>();
+
+    private final LongAdder coalescedRequests = new LongAdder();
+
+    private final Sinks.Many<ParkingSnapshot> updates = Sinks.many().multicast().directBestEffort();
+
+    private final MultiGauge cityParkings;
+
+    @Autowired
+    public ParkingSnapshotCache(ParkingSnapshotService parkingSnapshotService,
+                                @Value("${parking.cache.refresh-after:1m}") Duration refreshAfter,
+                                @Value("${parking.cache.expire-after:15m}") Duration expireAfter,
+                                @Value("${parking.cache.max-parkings:100000}") long maxParkings,
+                                @Value("${parking.cache.refresh-threads:4}") int refreshThreads,
+                                MeterRegistry meterRegistry) {
+        this(parkingSnapshotService::buildAsyncSnapshot, refreshAfter, expireAfter, maxParkings,
+                Executors.newFixedThreadPool(refreshThreads, daemonThreadFactory()), meterRegistry);
+    }
+
+    ParkingSnapshotCache(BiFunction<String, ParkingSnapshot, Mono<ParkingSnapshot>> loader, Duration refreshAfter, Duration expireAfter, long maxParkings, Executor refreshExecutor, MeterRegistry meterRegistry) {
+        this.refreshExecutor = refreshExecutor;
+        this.loader = loader;
+        // The builds are started from the refresh threads, never from the thread of the request that triggered them
+        this.scheduler = Schedulers.fromExecutor(refreshExecutor);
+        this.lastKnownGood = Caffeine.newBuilder()
+                .maximumWeight(maxParkings)
+                .weigher(PARKINGS_WEIGHER)
+                .build();
+        this.snapshots = Caffeine.newBuilder()
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterWrite(expireAfter)
+                .maximumWeight(maxParkings)
+                .weigher(PARKINGS_WEIGHER)
+                .executor(refreshExecutor)
+                .recordStats()
+                .buildAsync(new AsyncCacheLoader<String, ParkingSnapshot>() {
+                    @Override
+                    public CompletableFuture<ParkingSnapshot> asyncLoad(String city, Executor executor) {
+                        // The expired snapshot gives the feeds to fall back on if the endpoints fail
+                        ParkingSnapshot previous = lastKnownGood.getIfPresent(city);
+                        LOG.debug("Building parking snapshot of city {}", city);
+                        return build(city, previous);
+                    }
+
+                    @Override
+                    public CompletableFuture<ParkingSnapshot> asyncReload(String city, ParkingSnapshot previous, Executor executor) {
+                        LOG.debug("Refreshing parking snapshot of city {} built at {}", city, previous.getBuiltAt());
+                        return build(city, previous);
+                    }
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "parking.snapshots");
+        FunctionCounter.builder("parking.snapshots.coalesced", coalescedRequests, LongAdder::sum)
+                .description("Requests that waited for the build of their city started by another request")
+                .register(meterRegistry);
+        this.cityParkings = MultiGauge.builder("parking.city.parkings")
+                .description("Parkings of the last snapshot built for the city")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Retrieve the {@link ParkingSnapshot} of a city, build it if it is not in the cache or expired, blocking until it
+     * is built
+     * @param city  The city of the snapshot
+     * @return  The {@link ParkingSnapshot} of the city
+     * @throws NonExistingParkingManagerException if the city has no associated ParkingManager
+     */
+    public ParkingSnapshot get(String city) {
+        CompletableFuture<ParkingSnapshot> snapshot = getFuture(city);
+        try {
+            return snapshot.join();
+        } catch (CompletionException e) {
+            discard(city, snapshot);
+            // Throw the exception of the build, as if it was built in this thread
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieve the {@link ParkingSnapshot} of a city without blocking, build it if it is not in the cache or expired.
+     * Concurrent requests on a city being built wait for the same build
+     * @param city  The city of the snapshot
+     * @return  A {@link Mono} of the {@link ParkingSnapshot} of the city
+     * @throws NonExistingParkingManagerException (in the Mono) if the city has no associated ParkingManager
+     */
+    public Mono<ParkingSnapshot> getAsync(String city) {
+        // A cancelled request must not cancel the build shared with the other requests, it only cancels its own copy
+        return Mono.defer(() -> {
+            CompletableFuture<ParkingSnapshot> snapshot = getFuture(city);
+            return Mono.fromCompletionStage(snapshot.copy()).doOnError(e -> discard(city, snapshot));
+        });
+    }
+
+    /**
+     * Build the snapshot of a city, or join the build already running for it. The snapshot is published only if the
+     * city was not invalidated during the build
+     */
+    private CompletableFuture<ParkingSnapshot> build(String city, ParkingSnapshot previous) {
+        CompletableFuture<ParkingSnapshot> running = builds.get(city);
+        if (running != null) {
+            return running;
+        }
+        CompletableFuture<ParkingSnapshot> started = new CompletableFuture<>();
+        running = builds.putIfAbsent(city, started);
+        if (running != null) {
+            return running;
+        }
+        loader.apply(city, previous).subscribeOn(scheduler).toFuture().whenComplete((snapshot, error) -> {
+            boolean current = builds.remove(city, started);
+            if (error != null) {
+                started.completeExceptionally(error);
+                return;
+            }
+            if (current) {
+                publish(snapshot);
+            } else {
+                LOG.debug("Drop the parking snapshot of city {}, the city was invalidated during its build", city);
+            }
+            started.complete(snapshot);
+        });
+        return started;
+    }
+
+    /**
+     * Retrieve the snapshot of a city being built or built, start its build if there is none. A request finding the
+     * build already running waits for it and is counted as coalesced
+     */
+    private CompletableFuture<ParkingSnapshot> getFuture(String city) {
+        CompletableFuture<ParkingSnapshot> snapshot = snapshots.getIfPresent(city);
+        if (snapshot == null) {
+            return snapshots.get(city);
+        }
+        if (!snapshot.isDone()) {
+            coalescedRequests.increment();
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return  The number of requests that waited for the build of their city started by another request
+     */
+    public long getCoalescedRequestCount() {
+        return coalescedRequests.sum();
+    }
+
+    /**
+     * Caffeine removes a failed build once it completed, but only after its waiters may have been woken up. Remove it
+     * right away so the next request on the city builds it again instead of getting the same failure
+     */
+    private void discard(String city, CompletableFuture<ParkingSnapshot> failed) {
+        snapshots.asMap().remove(city, failed);
+    }
+
+    /**
+     * Retrieve the {@link ParkingSnapshot} of a city only if it is in the cache
+     * @param city  The city of the snapshot
+     * @return  The {@link ParkingSnapshot} of the city, null if it is not in the cache or still being built
+     */
+    public ParkingSnapshot getIfPresent(String city) {
+        CompletableFuture<ParkingSnapshot> snapshot = snapshots.getIfPresent(city);
+        if (snapshot == null || !snapshot.isDone() || snapshot.isCompletedExceptionally()) {
+            return null;
+        }
+        return snapshot.join();
+    }
+
+    /**
+     * Publish a {@link ParkingSnapshot} built outside the cache (by the polling), it replaces the current one
+     * @param city      The city of the snapshot
+     * @param snapshot  The new {@link ParkingSnapshot} of the city
+     */
+    public void put(String city, ParkingSnapshot snapshot) {
+        snapshots.put(city, CompletableFuture.completedFuture(snapshot));
+        publish(snapshot);
+    }
+
+    /**
+     * Rebuild the {@link ParkingSnapshot} of a city in background, the current one is returned until it is built.
+     * Concurrent refreshes of a city are done once
+     * @param city  The city of the snapshot
+     */
+    public void refresh(String city) {
+        refreshAsync(city).subscribe(snapshot -> { }, e -> LOG.warn("Failed to refresh the parking snapshot of city {}: {}", city, e.getMessage()));
+    }
+
+    /**
+     * Rebuild the {@link ParkingSnapshot} of a city, the current one is returned to the other requests until it is
+     * built. A city not in the cache is built as by {@link #getAsync}. Joins the build already running for the city
+     * if any
+     * @param city  The city of the snapshot
+     * @return  A {@link Mono} of the rebuilt {@link ParkingSnapshot}
+     * @throws NonExistingParkingManagerException (in the Mono) if the city has no associated ParkingManager
+     */
+    public Mono<ParkingSnapshot> refreshAsync(String city) {
+        return Mono.defer(() -> {
+            CompletableFuture<ParkingSnapshot> current = snapshots.getIfPresent(city);
+            if (current == null || !current.isDone() || current.isCompletedExceptionally()) {
+                return getAsync(city);
+            }
+            return Mono.fromCompletionStage(build(city, current.join()).thenApply(snapshot -> {
+                // Not replaced if the city was invalidated or rebuilt meanwhile
+                snapshots.asMap().replace(city, current, CompletableFuture.completedFuture(snapshot));
+                return snapshot;
+            }));
+        });
+    }
+
+    /**
+     * The new {@link ParkingSnapshot} of all the cities as they are built. A subscriber not requesting fast enough
+     * misses the snapshots emitted in the meantime, the others still get them
+     * @return  A {@link Flux} of the new snapshots, that never completes
+     */
+    public Flux<ParkingSnapshot> getUpdates() {
+        return updates.asFlux();
+    }
+
+    private void publish(ParkingSnapshot snapshot) {
+        lastKnownGood.put(snapshot.getCity(), snapshot);
+        updateCityParkings();
+        // Snapshots of different cities can be built at the same time, retry until the emissions are serialized
+        updates.emitNext(snapshot, (signalType, result) -> result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+    }
+
+    /**
+     * Set the cities of the parking.city.parkings gauge to the ones of the last snapshots, the gauges of the cities
+     * already there are kept and read their current snapshot
+     */
+    private void updateCityParkings() {
+        cityParkings.register(lastKnownGood.asMap().keySet().stream()
+                .map(city -> MultiGauge.Row.of(Tags.of("city", city), lastKnownGood, cache -> parkingCount(cache, city)))
+                .collect(Collectors.toList()));
+    }
+
+    private static double parkingCount(Cache<String, ParkingSnapshot> lastKnownGood, String city) {
+        ParkingSnapshot snapshot = lastKnownGood.getIfPresent(city);
+        return snapshot == null ? Double.NaN : snapshot.getParkings().size();
+    }
+
+    /**
+     * Remove the {@link ParkingSnapshot} of a city, the next request will build it again
+     * @param city  The city of the snapshot
+     */
+    public void invalidate(String city) {
+        builds.remove(city);
+        snapshots.synchronous().invalidate(city);
+        lastKnownGood.invalidate(city);
+        updateCityParkings();
+    }
+
+    /**
+     * Remove the {@link ParkingSnapshot} of a city whose {@link com.instantsystem.demo.parking.entity.ParkingManager}
+     * changed, it was built with the previous endpoints
+     * @param event The {@link ParkingManagerChangedEvent}
+     */
+    @EventListener
+    public void onParkingManagerChanged(ParkingManagerChangedEvent event) {
+        invalidate(event.getCity());
+    }
+
+    /**
+     * Remove all the {@link ParkingSnapshot}
+     */
+    public void invalidateAll() {
+        builds.clear();
+        snapshots.synchronous().invalidateAll();
+        lastKnownGood.invalidateAll();
+        updateCityParkings();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refreshExecutor instanceof ExecutorService) {
+            ((ExecutorService) refreshExecutor).shutdownNow();
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("parking-refresh-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
@@ -1,12 +1,26 @@
 package com.instantsystem.demo.parking.controller;
 
+import com.instantsystem.demo.parking.entity.CityParkings;
+import com.instantsystem.demo.parking.entity.NearbyParking;
 import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.ParkingField;
+import com.instantsystem.demo.parking.entity.ParkingProjection;
+import com.instantsystem.demo.parking.entity.ParkingSort;
+import com.instantsystem.demo.parking.entity.ParkingUpdate;
 import com.instantsystem.demo.parking.service.ParkingService;
+import com.instantsystem.demo.parking.service.ParkingStreamService;
+import com.instantsystem.demo.util.Versioned;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("parkings")
@@ -14,38 +28,164 @@ public class ParkingController {
 
     private static final Logger LOG = LoggerFactory.getLogger(ParkingController.class.getName());
 
+    /**
+     * Set on the responses built from stale data, with the time the oldest stale data was fetched at
+     */
+    public static final String STALE_SINCE_HEADER = "X-Stale-Since";
+
+    /**
+     * Set on the paged responses, with the number of results of all the pages
+     */
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
     public ParkingService parkingService;
 
-    public ParkingController(ParkingService parkingService) {
+    public ParkingStreamService parkingStreamService;
+
+    public ParkingController(ParkingService parkingService, ParkingStreamService parkingStreamService) {
         this.parkingService = parkingService;
+        this.parkingStreamService = parkingStreamService;
     }
 
     /**
      * Retrieve all the parking of a given city. If the position(latitude, longitude) is given we return only the
-     * parkings within range of the position (default range 500m)
-     * @param city  The city we want to retrieve the parking from
-     * @param lat   The user's latitude
-     * @param lon   The user's longitude
-     * @param range The range, in meter, around the user to look for parkings (default 500m)
-     * @return The list of parkings in the city or around the user's position
+     * parkings within range of the position (default range 500m). The parkings can be sorted, paged and written with
+     * only some of their properties, e.g. the id, position and remaining places for a map
+     * @param city      The city we want to retrieve the parking from
+     * @param lat       The user's latitude
+     * @param lon       The user's longitude
+     * @param range     The range, in meter, around the user to look for parkings (default 500m)
+     * @param sort      The order of the parkings: distance (needs the position), places (most remaining first) or
+     *                  name. In the order of the city if not given
+     * @param offset    The number of parkings skipped (default 0)
+     * @param limit     The maximal number of parkings returned (all if not given)
+     * @param fields    The properties of the parkings written, comma separated or repeated (all if not given)
+     * @return The list of parkings in the city or around the user's position, with the number of parkings of all the
+     *         pages in the X-Total-Count header, not modified if the client has the current version
      */
     @GetMapping("/city/{city}")
     @ResponseBody
-    public List<Parking> getCityParkings(@PathVariable String city, @RequestParam(required = false) Double lat, @RequestParam(required = false) Double lon, @RequestParam(required = false, defaultValue = "0.5") Double range) {
-        LOG.info("Retrieve parkings for city {}, in range {}, user's position lat : {}, lon : {}", city, range, lat, lon);
-        return parkingService.getParkings(city, lat, lon, range);
+    public Mono<ResponseEntity<ParkingProjection>> getCityParkings(@PathVariable String city, @RequestParam(required = false) Double lat, @RequestParam(required = false) Double lon, @RequestParam(required = false, defaultValue = "0.5") Double range,
+                                                                   @RequestParam(required = false) String sort, @RequestParam(required = false, defaultValue = "0") Integer offset, @RequestParam(required = false) Integer limit, @RequestParam(required = false) List<String> fields) {
+        LOG.debug("Retrieve parkings for city {}, in range {}, user's position lat : {}, lon : {}, sort {}, offset {}, limit {}, fields {}", city, range, lat, lon, sort, offset, limit, fields);
+        return Mono.defer(() -> {
+            // Parsed in the Mono, an invalid parameter is answered as the errors of the service are
+            Set<ParkingField> properties = ParkingField.fromProperties(fields);
+            return parkingService.getAsyncParkings(city, lat, lon, range, ParkingSort.fromParameter(sort), offset, limit)
+                    .map(versioned -> okWithETag(versioned)
+                            .header(TOTAL_COUNT_HEADER, String.valueOf(versioned.getValue().getTotal()))
+                            .body(new ParkingProjection(versioned.getValue().getParkings(), properties)));
+        });
+    }
+
+    /**
+     * Retrieve the parkings of several cities at once. If the position(latitude, longitude) is given we return only the
+     * parkings within range of the position (default range 500m). Each city has its own status and error, the
+     * response is a 200 even if some cities failed
+     * @param cities    The cities we want to retrieve the parkings from, comma separated or repeated
+     * @param lat       The user's latitude
+     * @param lon       The user's longitude
+     * @param range     The range, in kilometers, around the user to look for parkings (default 500m)
+     * @return The parkings of each city in the order of the cities, or the status and error of the city
+     */
+    @GetMapping("/cities")
+    @ResponseBody
+    public Mono<List<CityParkings>> getCitiesParkings(@RequestParam List<String> cities, @RequestParam(required = false) Double lat, @RequestParam(required = false) Double lon, @RequestParam(required = false, defaultValue = "0.5") Double range) {
+        LOG.debug("Retrieve parkings for cities {}, in range {}, user's position lat : {}, lon : {}", cities, range, lat, lon);
+        return parkingService.getAsyncParkingsOfCities(cities, lat, lon, range);
+    }
+
+    /**
+     * Retrieve the nearest parkings of the user's position in a city, with their distance
+     * @param city                  The city we want to retrieve the parking from
+     * @param lat                   The user's latitude
+     * @param lon                   The user's longitude
+     * @param k                     The maximal number of parkings returned (default 5), up to parking.nearest.max-k
+     * @param minPlacesRemaining    The minimal number of remaining places of the parkings (not filtered if not given)
+     * @return The list of the nearest parkings sorted by distance, in kilometers, not modified if the client has the
+     *         current version
+     */
+    @GetMapping("/city/{city}/nearest")
+    @ResponseBody
+    public Mono<ResponseEntity<List<NearbyParking>>> getNearestParkings(@PathVariable String city, @RequestParam Double lat, @RequestParam Double lon, @RequestParam(required = false, defaultValue = "5") Integer k, @RequestParam(required = false) Integer minPlacesRemaining) {
+        LOG.debug("Retrieve the {} nearest parkings for city {}, with at least {} places, user's position lat : {}, lon : {}", k, city, minPlacesRemaining, lat, lon);
+        return parkingService.getAsyncNearestParkings(city, lat, lon, k, minPlacesRemaining).map(ParkingController::withETag);
+    }
+
+    /**
+     * Retrieve the nearest parkings of the user's position within a range, in all the cities. For a user who doesn't
+     * know which city to ask for, e.g. near the boundary of two cities
+     * @param lat                   The user's latitude
+     * @param lon                   The user's longitude
+     * @param range                 The range, in kilometers, around the user to look for parkings (default 500m), up to
+     *                              parking.near.max-range
+     * @param k                     The maximal number of parkings returned (default 10), up to parking.nearest.max-k
+     * @param minPlacesRemaining    The minimal number of remaining places of the parkings (not filtered if not given)
+     * @return The list of the parkings in range sorted by distance, in kilometers, whatever their city
+     */
+    @GetMapping("/near")
+    @ResponseBody
+    public Mono<List<NearbyParking>> getParkingsNear(@RequestParam Double lat, @RequestParam Double lon, @RequestParam(required = false, defaultValue = "0.5") Double range, @RequestParam(required = false, defaultValue = "10") Integer k, @RequestParam(required = false) Integer minPlacesRemaining) {
+        LOG.debug("Retrieve the {} nearest parkings in range {}, with at least {} places, user's position lat : {}, lon : {}", k, range, minPlacesRemaining, lat, lon);
+        return parkingService.getAsyncParkingsNear(lat, lon, range, k, minPlacesRemaining);
+    }
+
+    /**
+     * Stream the parkings of a city as Server-Sent Events or newline delimited JSON: all the parkings first, then only
+     * the parkings that changed each time the city is refreshed. Instead of polling the whole city
+     * @param city The city we want to follow the parkings of
+     * @return The stream of parking updates of the city
+     */
+    @GetMapping(value = "/city/{city}/stream", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @ResponseBody
+    public Flux<ParkingUpdate> streamCityParkings(@PathVariable String city) {
+        LOG.debug("Stream parkings for city {}", city);
+        return parkingStreamService.streamParkings(city);
     }
 
     /**
      * Retrieve a specific parking by name
      * @param city The city of the parking
      * @param name The name of the parking
-     * @return The parking entity
+     * @return The parking entity, not modified if the client has the current version
      */
     @GetMapping("/city/{city}/name/{name}")
     @ResponseBody
-    public Parking getParking(@PathVariable String city, @PathVariable String name) {
-        LOG.info("Retrieve parking in city {}, with name {}", city, name);
-        return parkingService.getParking(city, name);
+    public Mono<ResponseEntity<Parking>> getParking(@PathVariable String city, @PathVariable String name) {
+        LOG.debug("Retrieve parking in city {}, with name {}", city, name);
+        return parkingService.getAsyncParking(city, name).map(ParkingController::withETag);
+    }
+
+    /**
+     * Retrieve a specific parking by id
+     * @param city The city of the parking
+     * @param id   The id of the parking, as given by the endpoints of the city
+     * @return The parking entity, not modified if the client has the current version
+     */
+    @GetMapping("/city/{city}/id/{id}")
+    @ResponseBody
+    public Mono<ResponseEntity<Parking>> getParkingById(@PathVariable String city, @PathVariable String id) {
+        LOG.debug("Retrieve parking in city {}, with id {}", city, id);
+        return parkingService.getAsyncParkingById(city, id).map(ParkingController::withETag);
+    }
+
+    /**
+     * Answer with the version of the snapshot as a strong ETag. When it matches the If-None-Match header of the
+     * request, Spring answers 304 Not Modified without writing the body. When some endpoints of the city failed the
+     * response is flagged as stale with the Warning and X-Stale-Since headers
+     * @param versioned The response body with the version and staleness of the snapshot it was computed from
+     * @return The response with its ETag
+     */
+    private static <T> ResponseEntity<T> withETag(Versioned<T> versioned) {
+        return okWithETag(versioned).body(versioned.getValue());
+    }
+
+    private static ResponseEntity.BodyBuilder okWithETag(Versioned<?> versioned) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(versioned.getVersion());
+        if (versioned.getStaleSince() != null) {
+            response.header(HttpHeaders.WARNING, "110 - \"Response is Stale\"")
+                    .header(STALE_SINCE_HEADER, versioned.getStaleSince().toString());
+        }
+        return response;
     }
 }
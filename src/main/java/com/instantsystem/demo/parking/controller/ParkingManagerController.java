@@ -48,7 +48,7 @@ public class ParkingManagerController {
      */
     @PutMapping("/city")
     public ParkingManager createParkingManager(@RequestBody ParkingManager parkingManager) {
-        LOG.info("Creating new parking manager for city {}, body {}", parkingManager.getCity(), parkingManager.toString());
+        LOG.info("Creating new parking manager for city {}, body {}", parkingManager.getCity(), parkingManager);
         return parkingManagerService.createParkingManager(parkingManager);
     }
 
@@ -60,7 +60,7 @@ public class ParkingManagerController {
      */
     @PostMapping("/city/{city}")
     public ParkingManager updateParkingManager(@PathVariable String city, @RequestBody ParkingManager parkingManager) {
-        LOG.info("Updating parking manager of city {}, body {}", city, parkingManager.toString());
+        LOG.info("Updating parking manager of city {}, body {}", city, parkingManager);
         return parkingManagerService.updateParkingManager(city, parkingManager);
     }
 
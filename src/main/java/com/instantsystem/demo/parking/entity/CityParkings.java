@@ -0,0 +1,115 @@
+package com.instantsystem.demo.parking.entity;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The answer for one city of a request on several cities: its {@link Parking} with the version and staleness of the
+ * snapshot they come from, or the HTTP status and message of its error. A city failing doesn't fail the other ones
+ */
+public class CityParkings implements Serializable {
+    private String city;
+    private int status;
+    private String error;
+    private List<Parking> parkings;
+    private String version;
+    private Instant staleSince;
+
+    public CityParkings(String city, int status, String error, List<Parking> parkings, String version, Instant staleSince) {
+        this.city = city;
+        this.status = status;
+        this.error = error;
+        this.parkings = parkings;
+        this.version = version;
+        this.staleSince = staleSince;
+    }
+
+    public CityParkings() {
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    /**
+     * @return  The HTTP status the request on this city alone would have answered, 200 when its parkings are given
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * @return  The message of the error of the city, null if its parkings are given
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public List<Parking> getParkings() {
+        return parkings;
+    }
+
+    public void setParkings(List<Parking> parkings) {
+        this.parkings = parkings;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * @return  The time the stale data of the city was fetched at, null if the data is fresh
+     */
+    public Instant getStaleSince() {
+        return staleSince;
+    }
+
+    public void setStaleSince(Instant staleSince) {
+        this.staleSince = staleSince;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CityParkings that = (CityParkings) o;
+        return status == that.status && Objects.equals(city, that.city) && Objects.equals(error, that.error)
+                && Objects.equals(parkings, that.parkings) && Objects.equals(version, that.version)
+                && Objects.equals(staleSince, that.staleSince);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(city, status, error, parkings, version, staleSince);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "city='" + city + '\'' +
+                ", status=" + status +
+                ", error='" + error + '\'' +
+                ", parkings=" + parkings +
+                ", version='" + version + '\'' +
+                ", staleSince=" + staleSince +
+                '}';
+    }
+}
@@ -0,0 +1,57 @@
+package com.instantsystem.demo.parking.entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A {@link Parking} with its distance, in kilometers, to the position it was searched from
+ */
+public class NearbyParking implements Serializable {
+    private Parking parking;
+    private double distance;
+
+    public NearbyParking(Parking parking, double distance) {
+        this.parking = parking;
+        this.distance = distance;
+    }
+
+    public NearbyParking() {
+    }
+
+    public Parking getParking() {
+        return parking;
+    }
+
+    public void setParking(Parking parking) {
+        this.parking = parking;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NearbyParking that = (NearbyParking) o;
+        return Double.compare(that.distance, distance) == 0 && Objects.equals(parking, that.parking);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(parking, distance);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "parking=" + parking +
+                ", distance=" + distance +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package com.instantsystem.demo.parking.entity;
+
+import com.instantsystem.demo.parking.exception.InvalidParkingQueryException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The properties of a {@link Parking} as written in the responses, that can be selected with the fields parameter of
+ * the requests. In the order Jackson writes them
+ */
+public enum ParkingField {
+    ID("id", Parking::getId),
+    NAME("name", Parking::getName),
+    CITY("city", Parking::getCity),
+    NB_PLACES("nbPlaces", Parking::getNbPlaces),
+    NB_PLACES_REMAINING("nbPlacesRemaining", Parking::getNbPlacesRemaining),
+    DESCRIPTION("description", Parking::getDescription),
+    POSITION("position", Parking::getPosition);
+
+    private final String property;
+
+    private final Function<Parking, Object> getter;
+
+    ParkingField(String property, Function<Parking, Object> getter) {
+        this.property = property;
+        this.getter = getter;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Object getValue(Parking parking) {
+        return getter.apply(parking);
+    }
+
+    /**
+     * @param properties    The names of the properties, as written in the responses
+     * @return  The {@link ParkingField} of the properties, null if none is given (all the properties)
+     * @throws InvalidParkingQueryException if a property is not a property of {@link Parking}
+     */
+    public static Set<ParkingField> fromProperties(Collection<String> properties) {
+        if (properties == null || properties.isEmpty()) {
+            return null;
+        }
+        Set<ParkingField> fields = EnumSet.noneOf(ParkingField.class);
+        for (String property : properties) {
+            ParkingField field = Arrays.stream(values())
+                    .filter(f -> f.property.equals(property.trim()))
+                    .findFirst()
+                    .orElseThrow(() -> new InvalidParkingQueryException(String.format("Unknown field %s, expected %s", property,
+                            Arrays.stream(values()).map(ParkingField::getProperty).collect(Collectors.joining(", ")))));
+            fields.add(field);
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,29 @@
+package com.instantsystem.demo.parking.entity;
+
+import java.util.List;
+
+/**
+ * A page of the {@link Parking} of a request, with the number of parkings of all the pages
+ */
+public class ParkingPage {
+
+    private final List<Parking> parkings;
+
+    private final int total;
+
+    public ParkingPage(List<Parking> parkings, int total) {
+        this.parkings = parkings;
+        this.total = total;
+    }
+
+    public List<Parking> getParkings() {
+        return parkings;
+    }
+
+    /**
+     * @return  The number of parkings matching the request, on all the pages
+     */
+    public int getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,67 @@
+package com.instantsystem.demo.parking.entity;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A list of {@link Parking} written with only some of their properties (the fields parameter of the requests).
+ * The properties are written straight from the parkings by {@link Serializer}, without copying them
+ */
+@JsonSerialize(using = ParkingProjection.Serializer.class)
+public class ParkingProjection {
+
+    private final List<Parking> parkings;
+
+    private final Set<ParkingField> fields;
+
+    /**
+     * @param parkings  The parkings to write
+     * @param fields    The properties written, null to write all of them as a {@link Parking} is
+     */
+    public ParkingProjection(List<Parking> parkings, Set<ParkingField> fields) {
+        this.parkings = parkings;
+        this.fields = fields;
+    }
+
+    public List<Parking> getParkings() {
+        return parkings;
+    }
+
+    public Set<ParkingField> getFields() {
+        return fields;
+    }
+
+    /**
+     * Write a {@link ParkingProjection} as a JSON array of objects with only the selected properties
+     */
+    public static class Serializer extends StdSerializer<ParkingProjection> {
+
+        public Serializer() {
+            super(ParkingProjection.class);
+        }
+
+        @Override
+        public void serialize(ParkingProjection projection, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            List<Parking> parkings = projection.getParkings();
+            gen.writeStartArray(projection, parkings.size());
+            for (Parking parking : parkings) {
+                if (projection.getFields() == null) {
+                    provider.defaultSerializeValue(parking, gen);
+                    continue;
+                }
+                gen.writeStartObject(parking);
+                for (ParkingField field : projection.getFields()) {
+                    provider.defaultSerializeField(field.getProperty(), field.getValue(parking), gen);
+                }
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.instantsystem.demo.parking.entity;
+
+import com.instantsystem.demo.parking.exception.InvalidParkingQueryException;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * The orders the {@link Parking} of a city can be returned in, given by the sort parameter of the requests
+ */
+public enum ParkingSort {
+    /**
+     * The nearest of the position first, only when a position is given
+     */
+    DISTANCE(null),
+    /**
+     * The most remaining places first, the parkings without the information last
+     */
+    PLACES(Comparator.comparing(Parking::getNbPlacesRemaining, Comparator.nullsLast(Comparator.reverseOrder()))),
+    /**
+     * By name in alphabetical order, the parkings without name last
+     */
+    NAME(Comparator.comparing(Parking::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+
+    private final Comparator<Parking> comparator;
+
+    ParkingSort(Comparator<Parking> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * @return  The order of the parkings, null for {@link #DISTANCE} which depends on the position
+     */
+    public Comparator<Parking> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * @param parameter The sort parameter of a request: distance, places or name (case insensitive)
+     * @return  The {@link ParkingSort}, null if the parameter is not given
+     * @throws InvalidParkingQueryException if the parameter is not a known sort
+     */
+    public static ParkingSort fromParameter(String parameter) {
+        if (parameter == null || parameter.isEmpty()) {
+            return null;
+        }
+        try {
+            return valueOf(parameter.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParkingQueryException(String.format("Unknown sort %s, expected distance, places or name", parameter));
+        }
+    }
+}
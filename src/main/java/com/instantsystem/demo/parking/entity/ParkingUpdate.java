@@ -0,0 +1,99 @@
+package com.instantsystem.demo.parking.entity;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An event of the parking stream of a city: all its {@link Parking} for the first event, then only the parkings that
+ * changed and the ids of the removed ones since the previous event
+ */
+public class ParkingUpdate implements Serializable {
+
+    public enum Type {
+        SNAPSHOT,
+        CHANGES
+    }
+
+    private Type type;
+    private String city;
+    private Instant builtAt;
+    private List<Parking> parkings;
+    private List<String> removed;
+
+    public ParkingUpdate(Type type, String city, Instant builtAt, List<Parking> parkings, List<String> removed) {
+        this.type = type;
+        this.city = city;
+        this.builtAt = builtAt;
+        this.parkings = parkings;
+        this.removed = removed;
+    }
+
+    public ParkingUpdate() {
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    public Instant getBuiltAt() {
+        return builtAt;
+    }
+
+    public void setBuiltAt(Instant builtAt) {
+        this.builtAt = builtAt;
+    }
+
+    public List<Parking> getParkings() {
+        return parkings;
+    }
+
+    public void setParkings(List<Parking> parkings) {
+        this.parkings = parkings;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(List<String> removed) {
+        this.removed = removed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ParkingUpdate that = (ParkingUpdate) o;
+        return type == that.type && Objects.equals(city, that.city) && Objects.equals(builtAt, that.builtAt) && Objects.equals(parkings, that.parkings) && Objects.equals(removed, that.removed);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, city, builtAt, parkings, removed);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "type=" + type +
+                ", city='" + city + '\'' +
+                ", builtAt=" + builtAt +
+                ", parkings=" + parkings +
+                ", removed=" + removed +
+                '}';
+    }
+}
@@ -5,13 +5,20 @@ import java.util.Objects;
 
 /**
  * This class will contain the URL to reach to get data for a {@link Parking} entity, with the {@link org.springframework.http.HttpMethod}
- * as String and the parameters (not used for now) and the InstantSystem mapper used to convert the response to {@link Parking} entity
+ * as String and the parameters (not used for now) and the InstantSystem mapper used to convert the response to {@link Parking} entity.
+ * The maxAge is the freshness policy of the endpoint in seconds: an endpoint with static data (names, capacities,
+ * positions) can be given a long maxAge so its response is reused while the live endpoints of the city are refreshed.
+ * Without maxAge the endpoint is called again on each refresh of the city.
+ * The timeout is the maximal duration of a call to the endpoint in milliseconds, the default response timeout of the
+ * upstream client applies when it is not set.
  */
 public class RequestData {
     public String method;
     public String url;
     public List<String> parameters;
     public ISMapper iSMapper;
+    public Long maxAge;
+    public Long timeout;
 
     public RequestData(String method, String url, List<String> parameters, ISMapper iSMapper) {
         this.method = method;
@@ -20,6 +27,11 @@ public class RequestData {
         this.iSMapper = iSMapper;
     }
 
+    public RequestData(String method, String url, List<String> parameters, ISMapper iSMapper, Long maxAge) {
+        this(method, url, parameters, iSMapper);
+        this.maxAge = maxAge;
+    }
+
     public RequestData() {
     }
 
@@ -55,16 +67,32 @@ public class RequestData {
         this.iSMapper = iSMapper;
     }
 
+    public Long getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         RequestData that = (RequestData) o;
-        return Objects.equals(method, that.method) && Objects.equals(url, that.url) && Objects.equals(parameters, that.parameters) && iSMapper.equals(that.iSMapper);
+        return Objects.equals(method, that.method) && Objects.equals(url, that.url) && Objects.equals(parameters, that.parameters) && iSMapper.equals(that.iSMapper) && Objects.equals(maxAge, that.maxAge) && Objects.equals(timeout, that.timeout);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(method, url, parameters, iSMapper);
+        return Objects.hash(method, url, parameters, iSMapper, maxAge, timeout);
     }
 }
@@ -0,0 +1,20 @@
+package com.instantsystem.demo.parking.event;
+
+import com.instantsystem.demo.parking.entity.ParkingManager;
+
+/**
+ * Published when the {@link ParkingManager} of a city is created, updated or deleted, so what was built from the
+ * previous one can be dropped
+ */
+public class ParkingManagerChangedEvent {
+
+    private final String city;
+
+    public ParkingManagerChangedEvent(String city) {
+        this.city = city;
+    }
+
+    public String getCity() {
+        return city;
+    }
+}
@@ -0,0 +1,11 @@
+package com.instantsystem.demo.parking.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidParkingQueryException extends RuntimeException {
+    public InvalidParkingQueryException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.instantsystem.demo.parking.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class TooManyCitiesException extends RuntimeException {
+    public TooManyCitiesException(int count, int maxCities) {
+        super(String.format("%d cities requested, at most %d cities can be requested at once", count, maxCities));
+    }
+}
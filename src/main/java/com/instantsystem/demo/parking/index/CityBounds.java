@@ -0,0 +1,133 @@
+package com.instantsystem.demo.parking.index;
+
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.Position;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Bounding box of the positions of the {@link Parking} of a city, to know without its parkings whether some of them
+ * can be in range of a position
+ */
+public class CityBounds {
+
+    private final String city;
+
+    private final double minLatitude;
+
+    private final double maxLatitude;
+
+    private final double minLongitude;
+
+    private final double maxLongitude;
+
+    public CityBounds(String city, double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        this.city = city;
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /**
+     * Compute the bounding box of the parkings of a city
+     * @param city      The city of the parkings
+     * @param parkings  The parkings of the city, those without position are ignored
+     * @return  The {@link CityBounds} of the city, null if none of its parkings has a position
+     */
+    public static CityBounds of(String city, List<Parking> parkings) {
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (Parking parking : parkings) {
+            Position position = parking.getPosition();
+            if (position == null || position.getLatitude() == null || position.getLongitude() == null) {
+                continue;
+            }
+            minLatitude = Math.min(minLatitude, position.getLatitude());
+            maxLatitude = Math.max(maxLatitude, position.getLatitude());
+            minLongitude = Math.min(minLongitude, position.getLongitude());
+            maxLongitude = Math.max(maxLongitude, position.getLongitude());
+        }
+        if (minLatitude > maxLatitude) {
+            return null;
+        }
+        return new CityBounds(city, minLatitude, maxLatitude, minLongitude, maxLongitude);
+    }
+
+    /**
+     * Check if a parking of the city can be in range of a position: the box of the range (a bit larger than the range,
+     * see {@link ParkingSpatialIndex}) overlaps the box of the city. Never false when a parking is in range
+     * @param lat   The latitude of the position
+     * @param lon   The longitude of the position
+     * @param range The range in kilometers
+     * @return  true if a parking of the city can be in range, false if none is
+     */
+    public boolean mayBeInRange(double lat, double lon, double range) {
+        double dLat = ParkingSpatialIndex.latitudeDelta(range);
+        if (lat + dLat < minLatitude || lat - dLat > maxLatitude) {
+            return false;
+        }
+        // The width of the range box is the largest at the latitude of the box nearest to a pole
+        double dLon = ParkingSpatialIndex.longitudeDelta(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude)), range);
+        if (dLon >= 180) {
+            return true;
+        }
+        // The longitudes are compared on both sides of the antimeridian
+        for (double shift = -360; shift <= 360; shift += 360) {
+            double shiftedLon = lon + shift;
+            if (shiftedLon + dLon >= minLongitude && shiftedLon - dLon <= maxLongitude) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CityBounds that = (CityBounds) o;
+        return Double.compare(that.minLatitude, minLatitude) == 0 && Double.compare(that.maxLatitude, maxLatitude) == 0
+                && Double.compare(that.minLongitude, minLongitude) == 0 && Double.compare(that.maxLongitude, maxLongitude) == 0
+                && Objects.equals(city, that.city);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(city, minLatitude, maxLatitude, minLongitude, maxLongitude);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "city='" + city + '\'' +
+                ", minLatitude=" + minLatitude +
+                ", maxLatitude=" + maxLatitude +
+                ", minLongitude=" + minLongitude +
+                ", maxLongitude=" + maxLongitude +
+                '}';
+    }
+}
@@ -0,0 +1,108 @@
+package com.instantsystem.demo.parking.index;
+
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the {@link CityBounds} of all the cities, to search parkings by position without knowing the city.
+ * The bounds of a city are computed from each {@link ParkingSnapshot} built (see {@link ParkingSnapshotCache#getUpdates()}),
+ * a city is only indexed once it was built: with the polling enabled all the cities of the DB are, otherwise only
+ * the cities requested once.
+ * The bounds are kept in an array, replaced only when the bounds of a city change, so a search reads a few hundred
+ * boxes without locking nor allocating
+ */
+@Component
+public class CityBoundsIndex {
+
+    public ParkingSnapshotCache parkingSnapshotCache;
+
+    private final Map<String, CityBounds> boundsByCity = new ConcurrentHashMap<>();
+
+    private volatile CityBounds[] bounds = new CityBounds[0];
+
+    private Disposable updates;
+
+    public CityBoundsIndex(ParkingSnapshotCache parkingSnapshotCache) {
+        this.parkingSnapshotCache = parkingSnapshotCache;
+    }
+
+    @PostConstruct
+    public void start() {
+        updates = parkingSnapshotCache.getUpdates().subscribe(this::update);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (updates != null) {
+            updates.dispose();
+        }
+    }
+
+    /**
+     * Index the bounds of the parkings of a snapshot, they replace the previous bounds of its city
+     * @param snapshot  The {@link ParkingSnapshot} of a city
+     */
+    public void update(ParkingSnapshot snapshot) {
+        CityBounds cityBounds = CityBounds.of(snapshot.getCity(), snapshot.getParkings());
+        CityBounds previous = cityBounds == null ? boundsByCity.remove(snapshot.getCity()) : boundsByCity.put(snapshot.getCity(), cityBounds);
+        // The positions of the parkings rarely change, most builds don't change the bounds
+        if (cityBounds == null ? previous != null : !cityBounds.equals(previous)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Remove a city from the index, it is indexed again when it is built
+     * @param city  The city to remove
+     */
+    public void remove(String city) {
+        if (boundsByCity.remove(city) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Remove all the cities
+     */
+    public void invalidateAll() {
+        boundsByCity.clear();
+        rebuild();
+    }
+
+    private synchronized void rebuild() {
+        bounds = boundsByCity.values().toArray(new CityBounds[0]);
+    }
+
+    /**
+     * Retrieve the cities that can have parkings in range of a position
+     * @param lat   The latitude of the position
+     * @param lon   The longitude of the position
+     * @param range The range in kilometers
+     * @return  The cities whose bounds overlap the range, the others have no parking in range
+     */
+    public List<String> findCities(double lat, double lon, double range) {
+        List<String> cities = new ArrayList<>();
+        for (CityBounds cityBounds : bounds) {
+            if (cityBounds.mayBeInRange(lat, lon, range)) {
+                cities.add(cityBounds.getCity());
+            }
+        }
+        return cities;
+    }
+
+    /**
+     * @return  The number of cities indexed
+     */
+    public int getCityCount() {
+        return bounds.length;
+    }
+}
@@ -0,0 +1,305 @@
+package com.instantsystem.demo.parking.index;
+
+import com.instantsystem.demo.parking.entity.NearbyParking;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.Position;
+import com.instantsystem.demo.util.DistanceCalculator;
+import com.instantsystem.demo.util.DistanceUnit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Grid index of the {@link Parking} of a city by position, to find the parkings in range of a position without
+ * computing the distance to all of them.
+ * The parkings are put in cells of cellSize degrees of latitude and longitude. A range query computes the bounding box
+ * of the range, only the parkings of the cells overlapping the box and inside the box have their distance computed.
+ * The box is computed a bit larger than the range so the result is the same as checking the distance of all the
+ * parkings, in the same order as the list the index was built from. The parkings without position are never returned.
+ */
+public class ParkingSpatialIndex {
+
+    /**
+     * The size of a cell in degrees, about 1.1 km of latitude
+     */
+    public static final double DEFAULT_CELL_SIZE = 0.01;
+
+    /**
+     * Added to the bounding box, covers the rounding of the distance computation (about 1 m)
+     */
+    private static final double MARGIN_DEGREES = 1e-5;
+
+    private final List<Parking> parkings;
+
+    private final double cellSize;
+
+    private final double[] latitudes;
+
+    private final double[] longitudes;
+
+    private final Map<Long, int[]> cells;
+
+    private final int indexedCount;
+
+    public ParkingSpatialIndex(List<Parking> parkings) {
+        this(parkings, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * @param parkings  The parkings to index, the list must not be modified afterwards
+     * @param cellSize  The size of a cell in degrees
+     */
+    public ParkingSpatialIndex(List<Parking> parkings, double cellSize) {
+        this.parkings = parkings;
+        this.cellSize = cellSize;
+        this.latitudes = new double[parkings.size()];
+        this.longitudes = new double[parkings.size()];
+        Map<Long, List<Integer>> cellLists = new HashMap<>();
+        int count = 0;
+        for (int i = 0; i < parkings.size(); i++) {
+            Position position = parkings.get(i).getPosition();
+            if (position == null || position.getLatitude() == null || position.getLongitude() == null) {
+                latitudes[i] = Double.NaN;
+                longitudes[i] = Double.NaN;
+                continue;
+            }
+            latitudes[i] = position.getLatitude();
+            longitudes[i] = position.getLongitude();
+            cellLists.computeIfAbsent(cellKey(cell(latitudes[i]), cell(longitudes[i])), k -> new ArrayList<>()).add(i);
+            count++;
+        }
+        this.cells = new HashMap<>(cellLists.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : cellLists.entrySet()) {
+            cells.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        this.indexedCount = count;
+    }
+
+    /**
+     * Retrieve the parkings whose distance to a position is under a range
+     * @param lat   The latitude of the position
+     * @param lon   The longitude of the position
+     * @param range The range in kilometers
+     * @return  The parkings in range, in the order of the indexed list
+     */
+    public List<Parking> findInRange(double lat, double lon, double range) {
+        List<Parking> inRange = new ArrayList<>();
+        visitInRange(lat, lon, range, (i, distance) -> inRange.add(parkings.get(i)));
+        return inRange;
+    }
+
+    /**
+     * Retrieve the parkings accepted by a filter whose distance to a position is under a range, with their distance
+     * @param lat       The latitude of the position
+     * @param lon       The longitude of the position
+     * @param range     The range in kilometers
+     * @param filter    The filter of the parkings
+     * @return  The parkings in range with their distance in kilometers, in the order of the indexed list
+     */
+    public List<NearbyParking> findNearbyInRange(double lat, double lon, double range, Predicate<Parking> filter) {
+        List<NearbyParking> inRange = new ArrayList<>();
+        visitInRange(lat, lon, range, (i, distance) -> {
+            if (filter.test(parkings.get(i))) {
+                inRange.add(new NearbyParking(parkings.get(i), distance));
+            }
+        });
+        return inRange;
+    }
+
+    /**
+     * Retrieve the k nearest parkings of a position accepted by a filter. The range searched is doubled until it
+     * contains k accepted parkings, then the k nearest are selected without sorting all of them
+     * @param lat       The latitude of the position
+     * @param lon       The longitude of the position
+     * @param k         The maximal number of parkings returned
+     * @param filter    The filter of the parkings
+     * @return  The k nearest parkings with their distance in kilometers, the nearest first
+     */
+    public List<NearbyParking> findNearest(double lat, double lon, int k, Predicate<Parking> filter) {
+        if (k <= 0 || indexedCount == 0) {
+            return Collections.emptyList();
+        }
+        int[] matches = new int[indexedCount];
+        double[] distances = new double[parkings.size()];
+        int[] size = new int[1];
+        double range = cellSize * DistanceCalculator.KM_PER_DEGREE;
+        while (true) {
+            size[0] = 0;
+            visitInRange(lat, lon, range, (i, distance) -> {
+                if (filter.test(parkings.get(i))) {
+                    matches[size[0]++] = i;
+                    distances[i] = distance;
+                }
+            });
+            // Past half the earth circumference every parking is in range
+            if (size[0] >= k || range > 180 * DistanceCalculator.KM_PER_DEGREE) {
+                break;
+            }
+            range *= 2;
+        }
+        return selectNearest(matches, size[0], distances, k);
+    }
+
+    /**
+     * Retrieve the k nearest parkings of a position accepted by a filter, within a range. The k nearest are selected
+     * without sorting all the parkings in range
+     * @param lat       The latitude of the position
+     * @param lon       The longitude of the position
+     * @param range     The range in kilometers
+     * @param k         The maximal number of parkings returned
+     * @param filter    The filter of the parkings
+     * @return  The k nearest parkings in range with their distance in kilometers, the nearest first
+     */
+    public List<NearbyParking> findNearestInRange(double lat, double lon, double range, int k, Predicate<Parking> filter) {
+        if (k <= 0 || indexedCount == 0) {
+            return Collections.emptyList();
+        }
+        int[] matches = new int[indexedCount];
+        double[] distances = new double[parkings.size()];
+        int[] size = new int[1];
+        visitInRange(lat, lon, range, (i, distance) -> {
+            if (filter.test(parkings.get(i))) {
+                matches[size[0]++] = i;
+                distances[i] = distance;
+            }
+        });
+        return selectNearest(matches, size[0], distances, k);
+    }
+
+    /**
+     * Select the k nearest of the matched parkings, the nearest first
+     */
+    private List<NearbyParking> selectNearest(int[] matches, int size, double[] distances, int k) {
+        // Bounded max-heap of the k nearest, the farthest on top is replaced by nearer ones
+        Comparator<Integer> byDistance = Comparator.<Integer>comparingDouble(i -> distances[i]).thenComparingInt(i -> i);
+        PriorityQueue<Integer> nearest = new PriorityQueue<>(k, byDistance.reversed());
+        for (int m = 0; m < size; m++) {
+            nearest.add(matches[m]);
+            if (nearest.size() > k) {
+                nearest.poll();
+            }
+        }
+        NearbyParking[] result = new NearbyParking[nearest.size()];
+        for (int r = result.length - 1; r >= 0; r--) {
+            int i = nearest.poll();
+            result[r] = new NearbyParking(parkings.get(i), distances[i]);
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Visit the parkings whose distance to a position is under a range, in the order of the indexed list
+     * @param lat       The latitude of the position
+     * @param lon       The longitude of the position
+     * @param range     The range in kilometers
+     * @param visitor   Called with the position of each parking in range in the list and its distance
+     */
+    private void visitInRange(double lat, double lon, double range, InRangeVisitor visitor) {
+        if (indexedCount == 0 || !(range >= 0)) {
+            return;
+        }
+        double dLat = latitudeDelta(range);
+        double dLon = longitudeDelta(lat, range);
+        boolean wholeLongitude = dLon >= 360;
+        // The box crosses the antimeridian, the longitude is not used to select the cells
+        boolean checkLongitude = !wholeLongitude && lon - dLon >= -180 && lon + dLon <= 180;
+
+        int[] candidates = new int[indexedCount];
+        int size = 0;
+        long minLat = cell(lat - dLat);
+        long maxLat = cell(lat + dLat);
+        long minLon = cell(lon - dLon);
+        long maxLon = cell(lon + dLon);
+        if (checkLongitude && (maxLat - minLat + 1) * (maxLon - minLon + 1) <= cells.size()) {
+            for (long cellLat = minLat; cellLat <= maxLat; cellLat++) {
+                for (long cellLon = minLon; cellLon <= maxLon; cellLon++) {
+                    int[] cell = cells.get(cellKey(cellLat, cellLon));
+                    if (cell != null) {
+                        size = addInBox(cell, candidates, size, lat, lon, dLat, dLon, true);
+                    }
+                }
+            }
+        } else {
+            // The box covers more cells than the index contains, visit the cells of the index instead
+            for (int[] cell : cells.values()) {
+                size = addInBox(cell, candidates, size, lat, lon, dLat, dLon, checkLongitude);
+            }
+        }
+        Arrays.sort(candidates, 0, size);
+
+        // Exact distance of the candidates in one batch
+        double[] candidateLatitudes = new double[size];
+        double[] candidateLongitudes = new double[size];
+        for (int c = 0; c < size; c++) {
+            candidateLatitudes[c] = latitudes[candidates[c]];
+            candidateLongitudes[c] = longitudes[candidates[c]];
+        }
+        double[] distances = new double[size];
+        DistanceCalculator.distances(lat, lon, candidateLatitudes, candidateLongitudes, distances, DistanceUnit.KILOMETERS);
+        for (int c = 0; c < size; c++) {
+            if (distances[c] <= range) {
+                visitor.visit(candidates[c], distances[c]);
+            }
+        }
+    }
+
+    /**
+     * @param range The range in kilometers
+     * @return  The half height in degrees of the bounding box of a range, a bit larger than the range
+     */
+    static double latitudeDelta(double range) {
+        return range / DistanceCalculator.KM_PER_DEGREE + MARGIN_DEGREES;
+    }
+
+    /**
+     * @param lat   The latitude of the center of the range
+     * @param range The range in kilometers
+     * @return  The half width in degrees of the bounding box of a range, a bit larger than the range. 360 if the
+     *          range reaches a pole, all the longitudes are then in the box
+     */
+    static double longitudeDelta(double lat, double range) {
+        double rangeDegrees = range / DistanceCalculator.KM_PER_DEGREE;
+        // Largest longitude difference of a point at rangeDegrees of arc
+        double sinRatio = Math.sin(Math.toRadians(rangeDegrees)) / Math.cos(Math.toRadians(lat));
+        if (rangeDegrees >= 90 || Math.abs(lat) + rangeDegrees + MARGIN_DEGREES >= 90 || sinRatio >= 1) {
+            return 360;
+        }
+        return Math.toDegrees(Math.asin(sinRatio)) * 1.0001 + MARGIN_DEGREES;
+    }
+
+    /**
+     * @return  The number of parkings with a position
+     */
+    public int getIndexedCount() {
+        return indexedCount;
+    }
+
+    private int addInBox(int[] cell, int[] candidates, int size, double lat, double lon, double dLat, double dLon, boolean checkLongitude) {
+        for (int i : cell) {
+            if (Math.abs(latitudes[i] - lat) <= dLat && (!checkLongitude || Math.abs(longitudes[i] - lon) <= dLon)) {
+                candidates[size++] = i;
+            }
+        }
+        return size;
+    }
+
+    private long cell(double degrees) {
+        return (long) Math.floor(degrees / cellSize);
+    }
+
+    private static long cellKey(long cellLat, long cellLon) {
+        return (cellLat << 32) ^ (cellLon & 0xFFFFFFFFL);
+    }
+
+    @FunctionalInterface
+    private interface InRangeVisitor {
+        void visit(int index, double distance);
+    }
+}
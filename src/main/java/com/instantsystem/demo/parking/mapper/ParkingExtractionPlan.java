@@ -0,0 +1,164 @@
+package com.instantsystem.demo.parking.mapper;
+
+import com.instantsystem.demo.parking.entity.ISFields;
+import com.instantsystem.demo.parking.entity.ISMapper;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.Position;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An {@link ISMapper} compiled once into what the {@link ParkingMappingEngine} needs to extract the {@link Parking}
+ * from a response : the path to the list of records split in field names, and a tree of the field names of the
+ * {@link ISFields} paths, so a record is read in a single pass whatever the number of fields mapped.
+ * Only the paths made of field names separated by dots can be streamed, the other (filters, array index, etc...) are
+ * read with {@link com.jayway.jsonpath.JsonPath}
+ */
+public class ParkingExtractionPlan {
+
+    static final int ID = 0;
+    static final int NAME = 1;
+    static final int NB_PLACES = 2;
+    static final int NB_PLACES_REMAINING = 3;
+    static final int DESCRIPTION = 4;
+    static final int LATITUDE = 5;
+    static final int LONGITUDE = 6;
+    static final int FIELD_COUNT = 7;
+
+    /**
+     * A path can be streamed if it is only made of field names separated by dots
+     */
+    private static final Pattern STREAMABLE_PATH = Pattern.compile("[^.\\[\\]$@*?()'\"]+(\\.[^.\\[\\]$@*?()'\"]+)*");
+
+    private final ISMapper mapper;
+    private final String[] listPath;
+    private final String[] fieldPaths;
+    private final Class<?>[] fieldTypes;
+    private final PathNode root;
+    private final boolean streamable;
+
+    private ParkingExtractionPlan(ISMapper mapper) {
+        this.mapper = mapper;
+        this.listPath = mapper.getListFieldPath().split("\\.");
+        ISFields iSFields = mapper.getiSFields();
+        fieldPaths = new String[FIELD_COUNT];
+        fieldPaths[ID] = iSFields.getId();
+        fieldPaths[NAME] = iSFields.getName();
+        fieldPaths[NB_PLACES] = iSFields.getNbPlaces();
+        fieldPaths[NB_PLACES_REMAINING] = iSFields.getNbPlacesRemaining();
+        fieldPaths[DESCRIPTION] = iSFields.getDescription();
+        // Position is only set if both are defined
+        if (iSFields.getLatitude() != null && iSFields.getLongitude() != null) {
+            fieldPaths[LATITUDE] = iSFields.getLatitude();
+            fieldPaths[LONGITUDE] = iSFields.getLongitude();
+        }
+        fieldTypes = new Class<?>[]{String.class, String.class, Integer.class, Integer.class, String.class, Double.class, Double.class};
+
+        boolean allStreamable = STREAMABLE_PATH.matcher(mapper.getListFieldPath()).matches();
+        root = new PathNode();
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            if (fieldPaths[field] == null) {
+                continue;
+            }
+            allStreamable &= STREAMABLE_PATH.matcher(fieldPaths[field]).matches();
+            PathNode node = root;
+            for (String name : fieldPaths[field].split("\\.")) {
+                node = node.children.computeIfAbsent(name, n -> new PathNode());
+            }
+            node.addField(field);
+        }
+        streamable = allStreamable;
+    }
+
+    /**
+     * Compile an {@link ISMapper} into an extraction plan
+     * @param mapper    The {@link ISMapper} to compile
+     * @return  The {@link ParkingExtractionPlan}
+     */
+    public static ParkingExtractionPlan compile(ISMapper mapper) {
+        return new ParkingExtractionPlan(mapper);
+    }
+
+    /**
+     * Build a {@link Parking} from the values extracted from a record, only the fields defined in the mapper are set
+     * @param values    The values extracted, indexed by field
+     * @return  The {@link Parking} with the fields of the mapper set
+     */
+    Parking toParking(Object[] values) {
+        Parking parking = new Parking();
+        parking.setId((String) values[ID]);
+        parking.setName((String) values[NAME]);
+        parking.setNbPlaces((Integer) values[NB_PLACES]);
+        parking.setNbPlacesRemaining((Integer) values[NB_PLACES_REMAINING]);
+        parking.setDescription((String) values[DESCRIPTION]);
+        if (isDefined(LATITUDE)) {
+            parking.setPosition(new Position((Double) values[LATITUDE], (Double) values[LONGITUDE]));
+        }
+        return parking;
+    }
+
+    /**
+     * Copy the fields defined in the mapper from a {@link Parking} extracted with this plan to another one, the other
+     * fields of the target are left as they are
+     * @param source    The {@link Parking} extracted with this plan
+     * @param target    The {@link Parking} to update
+     */
+    public void merge(Parking source, Parking target) {
+        if (isDefined(NAME))
+            target.setName(source.getName());
+        if (isDefined(NB_PLACES))
+            target.setNbPlaces(source.getNbPlaces());
+        if (isDefined(NB_PLACES_REMAINING))
+            target.setNbPlacesRemaining(source.getNbPlacesRemaining());
+        if (isDefined(DESCRIPTION))
+            target.setDescription(source.getDescription());
+        if (isDefined(LATITUDE))
+            target.setPosition(source.getPosition());
+    }
+
+    boolean isDefined(int field) {
+        return fieldPaths[field] != null;
+    }
+
+    ISMapper getMapper() {
+        return mapper;
+    }
+
+    String[] getListPath() {
+        return listPath;
+    }
+
+    String getFieldPath(int field) {
+        return fieldPaths[field];
+    }
+
+    Class<?> getFieldType(int field) {
+        return fieldTypes[field];
+    }
+
+    PathNode getRoot() {
+        return root;
+    }
+
+    boolean isStreamable() {
+        return streamable;
+    }
+
+    /**
+     * A field name in the paths of the mapper, with the fields of the {@link Parking} read at this name (several
+     * fields can share the same path, like the id and the name) and the names under it
+     */
+    static class PathNode {
+        final Map<String, PathNode> children = new HashMap<>();
+        int[] fields = new int[0];
+
+        private void addField(int field) {
+            int[] newFields = new int[fields.length + 1];
+            System.arraycopy(fields, 0, newFields, 0, fields.length);
+            newFields[fields.length] = field;
+            fields = newFields;
+        }
+    }
+}
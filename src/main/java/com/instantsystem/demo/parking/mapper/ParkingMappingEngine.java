@@ -0,0 +1,203 @@
+package com.instantsystem.demo.parking.mapper;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instantsystem.demo.parking.entity.ISMapper;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.util.JsonHelper;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.PathNotFoundException;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Convert the responses of the endpoints into {@link Parking} using the {@link ISMapper} of the endpoint.
+ * The mappers are compiled once into a {@link ParkingExtractionPlan}, then the response is read token by token up to
+ * the list of records, and each record is read once to build its {@link Parking}, without building a tree of the
+ * response. The rest of the response after the list is not read.
+ */
+@Component
+public class ParkingMappingEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingMappingEngine.class.getName());
+
+    private final JsonFactory jsonFactory;
+
+    private final Map<ISMapper, ParkingExtractionPlan> plans = new ConcurrentHashMap<>();
+
+    public ParkingMappingEngine(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Retrieve the {@link ParkingExtractionPlan} of a mapper, compile it the first time
+     * @param mapper    The {@link ISMapper} of the endpoint
+     * @return  The {@link ParkingExtractionPlan}
+     */
+    public ParkingExtractionPlan getPlan(ISMapper mapper) {
+        return plans.computeIfAbsent(mapper, m -> {
+            LOG.info("Compiling mapper of list {}", m.getListFieldPath());
+            return ParkingExtractionPlan.compile(m);
+        });
+    }
+
+    /**
+     * Extract the {@link Parking} from a response body, only the fields defined in the mapper are set on the parkings
+     * (use {@link ParkingExtractionPlan#merge(Parking, Parking)} to merge them)
+     * @param body  The response body, as received (the json encoding is detected by the parser)
+     * @param plan  The {@link ParkingExtractionPlan} of the mapper of the endpoint
+     * @return  The {@link List} of {@link Parking} in the order of the response
+     * @throws IOException if the body is not a valid json or the list of records is not found
+     * @throws PathNotFoundException if a field of the mapper is not found in a record
+     */
+    public List<Parking> map(byte[] body, ParkingExtractionPlan plan) throws IOException {
+        if (!plan.isStreamable()) {
+            return mapWithJsonPath(body, plan);
+        }
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            moveToList(parser, plan.getListPath());
+            List<Parking> parkings = new ArrayList<>();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected a record object in list " + plan.getMapper().getListFieldPath());
+                }
+                Object[] values = new Object[ParkingExtractionPlan.FIELD_COUNT];
+                boolean[] found = new boolean[ParkingExtractionPlan.FIELD_COUNT];
+                readObject(parser, plan.getRoot(), plan, values, found);
+                for (int field = 0; field < ParkingExtractionPlan.FIELD_COUNT; field++) {
+                    if (plan.isDefined(field) && !found[field]) {
+                        throw new PathNotFoundException("No results for path: $." + plan.getFieldPath(field));
+                    }
+                }
+                parkings.add(plan.toParking(values));
+            }
+            return parkings;
+        }
+    }
+
+    /**
+     * Move the parser to the start of the list of records
+     * @param parser    The parser, before the first token
+     * @param listPath  The field names to the list
+     * @throws IOException if the json is not valid or the list is not found
+     */
+    private void moveToList(JsonParser parser, String[] listPath) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a json object");
+        }
+        for (int depth = 0; depth < listPath.length; depth++) {
+            boolean last = depth == listPath.length - 1;
+            boolean found = false;
+            while (!found && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals(listPath[depth]) && value == (last ? JsonToken.START_ARRAY : JsonToken.START_OBJECT)) {
+                    found = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!found) {
+                throw new JsonParseException(parser, "List " + String.join(".", listPath) + " not found");
+            }
+        }
+    }
+
+    /**
+     * Read an object of a record, the values of the fields of the mapper under it are extracted, the rest is skipped
+     * @param parser    The parser, on the start of the object
+     * @param node      The node of the mapper paths of this object
+     * @param plan      The {@link ParkingExtractionPlan}
+     * @param values    The values extracted, by field
+     * @param found     The fields found, by field
+     * @throws IOException if the json is not valid
+     */
+    private void readObject(JsonParser parser, ParkingExtractionPlan.PathNode node, ParkingExtractionPlan plan, Object[] values, boolean[] found) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            ParkingExtractionPlan.PathNode child = node.children.get(parser.getCurrentName());
+            JsonToken token = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+            } else if (token == JsonToken.START_OBJECT) {
+                readObject(parser, child, plan, values, found);
+            } else if (token == JsonToken.START_ARRAY) {
+                // Arrays can't be reached by a streamed path, and they are not a value of the parking
+                parser.skipChildren();
+            } else {
+                for (int field : child.fields) {
+                    values[field] = readValue(parser, token, plan.getFieldType(field));
+                    found[field] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a scalar value, converted to the type of the field
+     * @param parser    The parser, on the value
+     * @param token     The token of the value
+     * @param type      The type of the field
+     * @return  The converted value, null if the value is null
+     * @throws IOException if the value can't be converted
+     */
+    private Object readValue(JsonParser parser, JsonToken token, Class<?> type) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        try {
+            if (type == Integer.class) {
+                return token.isNumeric() ? Integer.valueOf(parser.getValueAsInt()) : Integer.valueOf(parser.getText().trim());
+            } else if (type == Double.class) {
+                return token.isNumeric() ? Double.valueOf(parser.getValueAsDouble()) : Double.valueOf(parser.getText().trim());
+            }
+            return parser.getText();
+        } catch (NumberFormatException e) {
+            throw new JsonParseException(parser, "Unable to convert " + parser.getText() + " to " + type.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Extract the parkings with {@link com.jayway.jsonpath.JsonPath}, for the mappers whose paths can't be streamed. The
+     * list of records is found by the same field names as when streaming
+     */
+    private List<Parking> mapWithJsonPath(byte[] body, ParkingExtractionPlan plan) throws IOException {
+        try {
+            JSONObject json = new JSONObject(new String(body, StandardCharsets.UTF_8));
+            String[] listPath = plan.getListPath();
+            for (int i = 0; i < listPath.length - 1; i++) {
+                json = json.getJSONObject(listPath[i]);
+            }
+            JSONArray elements = json.getJSONArray(listPath[listPath.length - 1]);
+            List<Parking> parkings = new ArrayList<>(elements.length());
+            for (int i = 0; i < elements.length(); i++) {
+                // Parse the element only once, all the fields are read from the same document
+                DocumentContext element = JsonHelper.parse(elements.getJSONObject(i));
+                Object[] values = new Object[ParkingExtractionPlan.FIELD_COUNT];
+                for (int field = 0; field < ParkingExtractionPlan.FIELD_COUNT; field++) {
+                    if (plan.isDefined(field)) {
+                        values[field] = element.read(JsonHelper.compilePath(plan.getFieldPath(field)), plan.getFieldType(field));
+                    }
+                }
+                parkings.add(plan.toParking(values));
+            }
+            return parkings;
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
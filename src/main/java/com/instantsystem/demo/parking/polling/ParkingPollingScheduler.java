@@ -0,0 +1,212 @@
+package com.instantsystem.demo.parking.polling;
+
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import com.instantsystem.demo.parking.event.ParkingManagerChangedEvent;
+import com.instantsystem.demo.parking.service.ParkingManagerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Poll the endpoints of all the cities in background by refreshing their {@link ParkingSnapshot} in the
+ * {@link ParkingSnapshotCache}, so the requests on a polled city are served from memory without waiting for the
+ * endpoints. A poll shares the build of the city already running in the cache if any. The cities are discovered from
+ * the {@link ParkingManager} in DB, each city is then polled at its own interval given by the {@link PollingPolicy}.
+ * The polls run on a fixed number of threads, the first poll of each city and the next ones are spread with a random
+ * jitter so the cities are not all polled at the same time.
+ */
+@Component
+@ConditionalOnProperty(name = "parking.polling.enabled", havingValue = "true")
+public class ParkingPollingScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingPollingScheduler.class.getName());
+    public ParkingManagerService parkingManagerService;
+    public ParkingSnapshotCache parkingSnapshotCache;
+
+    private final PollingPolicy pollingPolicy;
+
+    private final Duration discoveryInterval;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final Map<String, CityPoll> polls = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ParkingPollingScheduler(ParkingManagerService parkingManagerService, ParkingSnapshotCache parkingSnapshotCache,
+                                   @Value("${parking.polling.threads:4}") int threads,
+                                   @Value("${parking.polling.discovery-interval:1m}") Duration discoveryInterval,
+                                   @Value("${parking.polling.min-interval:15s}") Duration minInterval,
+                                   @Value("${parking.polling.max-interval:5m}") Duration maxInterval,
+                                   @Value("${parking.polling.change-threshold:0.1}") double changeThreshold,
+                                   @Value("${parking.polling.quiet-hours-start:1}") int quietHoursStart,
+                                   @Value("${parking.polling.quiet-hours-end:6}") int quietHoursEnd,
+                                   @Value("${parking.polling.quiet-min-interval:2m}") Duration quietMinInterval) {
+        this(parkingManagerService, parkingSnapshotCache, threads, discoveryInterval,
+                new PollingPolicy(minInterval, maxInterval, changeThreshold, quietHoursStart, quietHoursEnd, quietMinInterval));
+    }
+
+    ParkingPollingScheduler(ParkingManagerService parkingManagerService, ParkingSnapshotCache parkingSnapshotCache,
+                            int threads, Duration discoveryInterval, PollingPolicy pollingPolicy) {
+        this.parkingManagerService = parkingManagerService;
+        this.parkingSnapshotCache = parkingSnapshotCache;
+        this.discoveryInterval = discoveryInterval;
+        this.pollingPolicy = pollingPolicy;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("parking-poll-");
+        threadFactory.setDaemon(true);
+        this.executor = new ScheduledThreadPoolExecutor(threads, threadFactory);
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        LOG.info("Start polling the cities, discovery every {}", discoveryInterval);
+        executor.scheduleWithFixedDelay(this::discover, 0, discoveryInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Retrieve the current poll interval of a city
+     * @param city  The city polled
+     * @return  The interval until the next poll, null if the city is not polled
+     */
+    public Duration getInterval(String city) {
+        CityPoll poll = polls.get(city);
+        return poll == null ? null : poll.interval;
+    }
+
+    /**
+     * Synchronize the polled cities right away when a {@link ParkingManager} changed, instead of polling the city with
+     * the previous one until the next discovery
+     * @param event The {@link ParkingManagerChangedEvent}
+     */
+    @EventListener
+    public void onParkingManagerChanged(ParkingManagerChangedEvent event) {
+        if (!executor.isShutdown()) {
+            executor.execute(this::discover);
+        }
+    }
+
+    /**
+     * Synchronize the polled cities with the {@link ParkingManager} in DB: the new cities are scheduled, the removed
+     * ones are cancelled and the updated ones are polled with their new {@link ParkingManager}
+     */
+    synchronized void discover() {
+        try {
+            Set<String> cities = new HashSet<>();
+            for (ParkingManager parkingManager : parkingManagerService.getAll()) {
+                cities.add(parkingManager.getCity());
+                CityPoll poll = polls.get(parkingManager.getCity());
+                if (poll == null) {
+                    LOG.info("Start polling city {}", parkingManager.getCity());
+                    poll = new CityPoll(parkingManager, pollingPolicy.getMinInterval());
+                    polls.put(parkingManager.getCity(), poll);
+                    schedule(poll, Duration.ofMillis(ThreadLocalRandom.current().nextLong(pollingPolicy.getMinInterval().toMillis() + 1)));
+                } else {
+                    poll.parkingManager = parkingManager;
+                }
+            }
+            polls.values().removeIf(poll -> {
+                if (cities.contains(poll.parkingManager.getCity())) {
+                    return false;
+                }
+                LOG.info("Stop polling city {}, its parking manager was removed", poll.parkingManager.getCity());
+                poll.future.cancel(false);
+                parkingSnapshotCache.invalidate(poll.parkingManager.getCity());
+                return true;
+            });
+        } catch (RuntimeException e) {
+            // Keep the discovery scheduled, it will be retried at the next interval
+            LOG.error("Failed to discover the cities to poll", e);
+        }
+    }
+
+    /**
+     * Refresh the {@link ParkingSnapshot} of a city in the cache and schedule the next poll. The cache drops the
+     * snapshot if the city is invalidated during the build, when its ParkingManager changed or was removed
+     * @param poll  The poll of the city
+     */
+    void poll(CityPoll poll) {
+        String city = poll.parkingManager.getCity();
+        if (polls.get(city) != poll) {
+            return;
+        }
+        boolean failed = false;
+        double changeRatio = 0;
+        try {
+            ParkingSnapshot previous = parkingSnapshotCache.getIfPresent(city);
+            ParkingSnapshot snapshot = parkingSnapshotCache.refreshAsync(city).block();
+            if (polls.get(city) != poll) {
+                LOG.debug("City {} is not polled anymore", city);
+                return;
+            }
+            changeRatio = PollingPolicy.changeRatio(previous == null ? null : previous.getParkings(), snapshot.getParkings());
+            // Some endpoints failed and their previous feeds were reused, back off as for a failure
+            if (snapshot.getStaleSince() != null) {
+                LOG.warn("City {} polled with stale data since {}", city, snapshot.getStaleSince());
+                failed = true;
+            }
+        } catch (RuntimeException e) {
+            // The previous snapshot stays in the cache
+            LOG.warn("Failed to poll city {}: {}", city, e.getMessage());
+            failed = true;
+        }
+        poll.interval = pollingPolicy.nextInterval(poll.interval, changeRatio, failed, LocalTime.now());
+        LOG.debug("City {} polled, {} of the parkings changed, next poll in {}", city, changeRatio, poll.interval);
+        schedule(poll, jitter(poll.interval));
+    }
+
+    private void schedule(CityPoll poll, Duration delay) {
+        if (!executor.isShutdown()) {
+            poll.future = executor.schedule(() -> poll(poll), delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Randomize an interval by +/- 10% so the cities polled at the same interval drift apart
+     */
+    private static Duration jitter(Duration interval) {
+        long millis = interval.toMillis();
+        return Duration.ofMillis(millis - millis / 10 + ThreadLocalRandom.current().nextLong(millis / 5 + 1));
+    }
+
+    /**
+     * The polling state of a city
+     */
+    static class CityPoll {
+
+        volatile ParkingManager parkingManager;
+
+        volatile Duration interval;
+
+        volatile ScheduledFuture<?> future;
+
+        CityPoll(ParkingManager parkingManager, Duration interval) {
+            this.parkingManager = parkingManager;
+            this.interval = interval;
+        }
+    }
+}
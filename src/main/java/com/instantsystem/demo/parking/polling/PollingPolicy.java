@@ -0,0 +1,112 @@
+package com.instantsystem.demo.parking.polling;
+
+import com.instantsystem.demo.parking.entity.Parking;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compute the interval until the next poll of a city from the result of the last one:
+ * <ul>
+ *     <li>a failed poll doubles the interval, so a failing endpoint is called less and less</li>
+ *     <li>if a lot of parkings changed their remaining places (ratio above the change threshold) the interval is halved</li>
+ *     <li>if some parkings changed the interval is kept</li>
+ *     <li>if nothing changed the interval is increased by half</li>
+ * </ul>
+ * The interval is always between the min and max intervals, during the quiet hours (the night) the min interval is
+ * replaced by the quiet min interval.
+ */
+public class PollingPolicy {
+
+    private final Duration minInterval;
+
+    private final Duration maxInterval;
+
+    private final double changeThreshold;
+
+    private final int quietHoursStart;
+
+    private final int quietHoursEnd;
+
+    private final Duration quietMinInterval;
+
+    /**
+     * @param minInterval       The minimal interval between two polls of a city
+     * @param maxInterval       The maximal interval between two polls of a city
+     * @param changeThreshold   The ratio of changed parkings above which the city is polled faster
+     * @param quietHoursStart   The hour the quiet hours start (included)
+     * @param quietHoursEnd     The hour the quiet hours end (excluded), can be lower than the start to wrap midnight
+     * @param quietMinInterval  The minimal interval during the quiet hours
+     */
+    public PollingPolicy(Duration minInterval, Duration maxInterval, double changeThreshold, int quietHoursStart, int quietHoursEnd, Duration quietMinInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.changeThreshold = changeThreshold;
+        this.quietHoursStart = quietHoursStart;
+        this.quietHoursEnd = quietHoursEnd;
+        this.quietMinInterval = quietMinInterval;
+    }
+
+    /**
+     * Compute the interval until the next poll
+     * @param current       The interval used before the last poll
+     * @param changeRatio   The ratio of parkings whose remaining places changed during the last poll
+     * @param failed        true if the last poll failed
+     * @param time          The current time of day
+     * @return  The interval until the next poll
+     */
+    public Duration nextInterval(Duration current, double changeRatio, boolean failed, LocalTime time) {
+        long millis = current.toMillis();
+        if (failed) {
+            millis *= 2;
+        } else if (changeRatio >= changeThreshold) {
+            millis /= 2;
+        } else if (changeRatio <= 0) {
+            millis += millis / 2;
+        }
+        long min = Math.min(isQuietHour(time) ? quietMinInterval.toMillis() : minInterval.toMillis(), maxInterval.toMillis());
+        return Duration.ofMillis(Math.max(min, Math.min(maxInterval.toMillis(), millis)));
+    }
+
+    /**
+     * Compute the ratio of parkings whose remaining places changed between two polls, a new parking counts as changed
+     * @param previous  The parkings of the previous poll, null if there is none
+     * @param current   The parkings of the last poll
+     * @return  The ratio of changed parkings, between 0 and 1
+     */
+    public static double changeRatio(List<Parking> previous, List<Parking> current) {
+        if (current.isEmpty()) {
+            return 0;
+        }
+        if (previous == null) {
+            return 1;
+        }
+        Map<String, Integer> previousPlaces = new HashMap<>();
+        for (Parking parking : previous) {
+            previousPlaces.put(parking.getId(), parking.getNbPlacesRemaining());
+        }
+        int changed = 0;
+        for (Parking parking : current) {
+            if (!previousPlaces.containsKey(parking.getId()) || !Objects.equals(previousPlaces.get(parking.getId()), parking.getNbPlacesRemaining())) {
+                changed++;
+            }
+        }
+        return (double) changed / current.size();
+    }
+
+    public Duration getMinInterval() {
+        return minInterval;
+    }
+
+    private boolean isQuietHour(LocalTime time) {
+        int hour = time.getHour();
+        if (quietHoursStart <= quietHoursEnd) {
+            return hour >= quietHoursStart && hour < quietHoursEnd;
+        }
+        return hour >= quietHoursStart || hour < quietHoursEnd;
+    }
+}
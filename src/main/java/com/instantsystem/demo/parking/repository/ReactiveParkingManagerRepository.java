@@ -0,0 +1,20 @@
+package com.instantsystem.demo.parking.repository;
+
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Non blocking access to the {@link ParkingManager}, used by the parking requests
+ */
+@Repository("ReactiveParkingManager")
+public interface ReactiveParkingManagerRepository extends ReactiveMongoRepository<ParkingManager, String> {
+
+    Mono<ParkingManager> getByCity(String city);
+
+    Flux<ParkingManager> findAllByCityIn(Collection<String> cities);
+}
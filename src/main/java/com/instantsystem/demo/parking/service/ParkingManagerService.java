@@ -1,14 +1,23 @@
 package com.instantsystem.demo.parking.service;
 
+import com.instantsystem.demo.parking.cache.ParkingManagerCache;
 import com.instantsystem.demo.parking.entity.ParkingManager;
+import com.instantsystem.demo.parking.event.ParkingManagerChangedEvent;
 import com.instantsystem.demo.parking.exception.AlreadyExistingParkingManagerException;
 import com.instantsystem.demo.parking.exception.NonExistingParkingManagerException;
 import com.instantsystem.demo.parking.repository.ParkingManagerRepository;
+import com.instantsystem.demo.parking.repository.ReactiveParkingManagerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ParkingManagerService {
@@ -16,9 +25,20 @@ public class ParkingManagerService {
     private static final Logger LOG = LoggerFactory.getLogger(ParkingManagerService.class.getName());
 
     public ParkingManagerRepository parkingManagerRepository;
+    public ReactiveParkingManagerRepository reactiveParkingManagerRepository;
+    public ParkingManagerCache parkingManagerCache;
+    public ApplicationEventPublisher eventPublisher;
 
-    public ParkingManagerService(ParkingManagerRepository parkingManagerRepository) {
+    private final Timer lookupTimer;
+
+    public ParkingManagerService(ParkingManagerRepository parkingManagerRepository, ReactiveParkingManagerRepository reactiveParkingManagerRepository, ParkingManagerCache parkingManagerCache, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
         this.parkingManagerRepository = parkingManagerRepository;
+        this.reactiveParkingManagerRepository = reactiveParkingManagerRepository;
+        this.parkingManagerCache = parkingManagerCache;
+        this.eventPublisher = eventPublisher;
+        this.lookupTimer = Timer.builder("parking.manager.lookup")
+                .description("Lookup of the ParkingManager of a city, from the cache or the DB")
+                .register(meterRegistry);
     }
 
     /**
@@ -31,20 +51,49 @@ public class ParkingManagerService {
     }
 
     /**
-     * Retrieve a {@link ParkingManager} from a city
+     * Retrieve a {@link ParkingManager} from a city, from the cache if it was retrieved recently. An unknown city is
+     * also cached for a short time
      * @param city  The city associated with the {@link ParkingManager}
      * @return The {@link ParkingManager}
      * @throws NonExistingParkingManagerException if no {@link ParkingManager} is found for the given city
      */
     public ParkingManager getByCity(String city) {
-        LOG.info("Retrieve ParkingManager for city {}", city);
-        ParkingManager parkingManager = parkingManagerRepository.getByCity(city);
+        LOG.debug("Retrieve ParkingManager for city {}", city);
+        ParkingManager parkingManager = lookupTimer.record(() -> parkingManagerCache.get(city, parkingManagerRepository::getByCity));
         if (parkingManager == null) {
             throw new NonExistingParkingManagerException(city);
         }
         return parkingManager;
     }
 
+    /**
+     * Retrieve a {@link ParkingManager} from a city without blocking, from the cache if it was retrieved recently
+     * @param city  The city associated with the {@link ParkingManager}
+     * @return A {@link Mono} of the {@link ParkingManager}
+     * @throws NonExistingParkingManagerException (in the Mono) if no {@link ParkingManager} is found for the given city
+     */
+    public Mono<ParkingManager> getAsyncByCity(String city) {
+        return Mono.defer(() -> {
+            Timer.Sample lookup = Timer.start();
+            return parkingManagerCache.getAsync(city, reactiveParkingManagerRepository::getByCity)
+                    .doFinally(signal -> lookup.stop(lookupTimer));
+        }).switchIfEmpty(Mono.error(() -> new NonExistingParkingManagerException(city)));
+    }
+
+    /**
+     * Retrieve the {@link ParkingManager} of several cities without blocking, from the cache if they were retrieved
+     * recently, the others with a single query
+     * @param cities    The cities associated with the {@link ParkingManager}
+     * @return A {@link Mono} of the {@link ParkingManager} by city, the cities without {@link ParkingManager} are missing
+     */
+    public Mono<Map<String, ParkingManager>> getAsyncByCities(Collection<String> cities) {
+        return Mono.defer(() -> {
+            Timer.Sample lookup = Timer.start();
+            return parkingManagerCache.getAllAsync(cities, reactiveParkingManagerRepository::findAllByCityIn)
+                    .doFinally(signal -> lookup.stop(lookupTimer));
+        });
+    }
+
     /**
      * Create a {@link ParkingManager}
      * @param parkingManager The {@link ParkingManager} object that will be inserted in DB
@@ -52,13 +101,16 @@ public class ParkingManagerService {
      * @throws AlreadyExistingParkingManagerException if a {@link ParkingManager} is already in DB for the same city
      */
     public ParkingManager createParkingManager(ParkingManager parkingManager) {
-        LOG.info("Creating new parking manager for city {}, body {}", parkingManager.getCity(), parkingManager.toString());
+        LOG.info("Creating new parking manager for city {}, body {}", parkingManager.getCity(), parkingManager);
         ParkingManager existingPM = parkingManagerRepository.getByCity(parkingManager.getCity());
         if (existingPM != null) {
             LOG.warn("Tried to created a parking manager for city {}, already exists id: {}", parkingManager.getCity(), existingPM.getId());
             throw new AlreadyExistingParkingManagerException(parkingManager.getCity());
         }
-        return parkingManagerRepository.insert(parkingManager);
+        ParkingManager created = parkingManagerRepository.insert(parkingManager);
+        parkingManagerCache.put(created);
+        eventPublisher.publishEvent(new ParkingManagerChangedEvent(created.getCity()));
+        return created;
     }
 
     /**
@@ -69,7 +121,7 @@ public class ParkingManagerService {
      * @throws NonExistingParkingManagerException if the city has no associated {@link ParkingManager}
      */
     public ParkingManager updateParkingManager(String city, ParkingManager parkingManager) {
-        LOG.info("Updating parking manager of city {}, body {}", city, parkingManager.toString());
+        LOG.info("Updating parking manager of city {}, body {}", city, parkingManager);
         ParkingManager existingPM = parkingManagerRepository.getByCity(city);
         if (existingPM == null) {
             LOG.warn("Tried to update a parking manager for city {}, doesn't exists", city);
@@ -78,7 +130,10 @@ public class ParkingManagerService {
         parkingManager.setId(existingPM.getId());
         // Just in case someone tries to update a city PM with another city
         parkingManager.setCity(city);
-        return parkingManagerRepository.save(parkingManager);
+        ParkingManager updated = parkingManagerRepository.save(parkingManager);
+        parkingManagerCache.put(updated);
+        eventPublisher.publishEvent(new ParkingManagerChangedEvent(city));
+        return updated;
     }
 
     /**
@@ -94,5 +149,7 @@ public class ParkingManagerService {
             throw new NonExistingParkingManagerException(city);
         }
         parkingManagerRepository.delete(toDelete);
+        parkingManagerCache.invalidate(city);
+        eventPublisher.publishEvent(new ParkingManagerChangedEvent(city));
     }
 }
@@ -1,201 +1,392 @@
 package com.instantsystem.demo.parking.service;
 
-import com.instantsystem.demo.parking.entity.*;
-import com.instantsystem.demo.parking.exception.BuildParkingException;
-import com.instantsystem.demo.parking.exception.InstantSystemMapperException;
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
+import com.instantsystem.demo.parking.entity.CityParkings;
+import com.instantsystem.demo.parking.entity.NearbyParking;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.ParkingPage;
+import com.instantsystem.demo.parking.entity.ParkingSort;
+import com.instantsystem.demo.parking.exception.InvalidParkingQueryException;
+import com.instantsystem.demo.parking.exception.NonExistingParkingManagerException;
 import com.instantsystem.demo.parking.exception.ParkingNotFoundException;
-import com.instantsystem.demo.util.DistanceCalculator;
-import com.instantsystem.demo.util.JsonHelper;
-import com.instantsystem.demo.util.WebClientManager;
-import com.jayway.jsonpath.PathNotFoundException;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.instantsystem.demo.parking.exception.TooManyCitiesException;
+import com.instantsystem.demo.parking.index.CityBoundsIndex;
+import com.instantsystem.demo.util.Versioned;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
 public class ParkingService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ParkingService.class.getName());
+
+    private static final Comparator<NearbyParking> BY_DISTANCE = Comparator.comparingDouble(NearbyParking::getDistance);
+    public ParkingSnapshotCache parkingSnapshotCache;
     public ParkingManagerService parkingManagerService;
+    public CityBoundsIndex cityBoundsIndex;
+
+    private final int maxBatchCities;
+
+    private final int maxNearestParkings;
+
+    private final double maxNearRange;
+
+    private final Timer rangeTimer;
+
+    private final Timer nearestTimer;
+
+    private final Timer nearTimer;
 
-    public ParkingService(ParkingManagerService parkingManagerService) {
+    public ParkingService(ParkingSnapshotCache parkingSnapshotCache,
+                          ParkingManagerService parkingManagerService,
+                          CityBoundsIndex cityBoundsIndex,
+                          @Value("${parking.batch.max-cities:20}") int maxBatchCities,
+                          @Value("${parking.nearest.max-k:100}") int maxNearestParkings,
+                          @Value("${parking.near.max-range:5}") double maxNearRange,
+                          MeterRegistry meterRegistry) {
+        this.parkingSnapshotCache = parkingSnapshotCache;
         this.parkingManagerService = parkingManagerService;
+        this.cityBoundsIndex = cityBoundsIndex;
+        this.maxBatchCities = maxBatchCities;
+        this.maxNearestParkings = maxNearestParkings;
+        this.maxNearRange = maxNearRange;
+        this.rangeTimer = filterTimer(meterRegistry, "range");
+        this.nearestTimer = filterTimer(meterRegistry, "nearest");
+        this.nearTimer = filterTimer(meterRegistry, "near");
+    }
+
+    private static Timer filterTimer(MeterRegistry meterRegistry, String query) {
+        return Timer.builder("parking.range.filter")
+                .description("Search of the parkings of a city around a position")
+                .tag("query", query)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Retrieve a page of the {@link Parking} in a city that are in range of the given position (IF given), without
+     * blocking. The parkings are sorted (IF asked) before being paged, the pages of a same snapshot version are
+     * consistent with each other
+     * @param city      The city to retrieve the {@link Parking} from
+     * @param lat       The latitude of the position
+     * @param lon       The longitude of the position
+     * @param range     The range around the position in KM
+     * @param sort      The order of the parkings, null to keep the order of the city
+     * @param offset    The number of parkings skipped
+     * @param limit     The maximal number of parkings returned, null to return all the others
+     * @return A {@link Mono} of the {@link ParkingPage} of the parkings that are in range of the given position if
+     *         given, with the version and staleness of the snapshot they come from
+     * @throws InvalidParkingQueryException (in the Mono) if the offset or the limit is negative, or if the parkings are
+     *         sorted by distance without position
+     */
+    public Mono<Versioned<ParkingPage>> getAsyncParkings(String city, Double lat, Double lon, Double range, ParkingSort sort, int offset, Integer limit) {
+        long start = System.nanoTime();
+        LOG.debug("Retrieve parkings in city {}, filter by range ({} kilometers) around the user position lat : {}, lon : {}, sort {}, offset {}, limit {}", city, range, lat, lon, sort, offset, limit);
+        if (offset < 0 || (limit != null && limit < 0)) {
+            return Mono.error(new InvalidParkingQueryException(String.format("Invalid page, offset %d and limit %s must be positive", offset, limit)));
+        }
+        if (sort == ParkingSort.DISTANCE && (lat == null || lon == null)) {
+            return Mono.error(new InvalidParkingQueryException("The parkings can only be sorted by distance from a position (lat, lon)"));
+        }
+        return parkingSnapshotCache.getAsync(city)
+                .map(snapshot -> {
+                    List<Parking> parkings = rangeTimer.record(() -> sortInRange(snapshot, lat, lon, range, sort));
+                    List<Parking> page = page(parkings, offset, limit);
+                    logRangeSummary(start, snapshot, lat, lon, range, page.size());
+                    return new Versioned<>(new ParkingPage(page, parkings.size()), snapshot.getVersion(), snapshot.getStaleSince());
+                });
+    }
+
+    private static List<Parking> sortInRange(ParkingSnapshot snapshot, Double lat, Double lon, Double range, ParkingSort sort) {
+        if (sort == null) {
+            return filterInRange(snapshot, lat, lon, range);
+        }
+        if (sort == ParkingSort.DISTANCE) {
+            // The distances are already computed by the range search, sort on them instead of computing them again
+            return snapshot.getSpatialIndex().findNearbyInRange(lat, lon, range, parking -> true).stream()
+                    .sorted(Comparator.comparingDouble(NearbyParking::getDistance))
+                    .map(NearbyParking::getParking)
+                    .collect(Collectors.toList());
+        }
+        // Never sort the list of the snapshot, it is shared by all the requests
+        List<Parking> parkings = new ArrayList<>(filterInRange(snapshot, lat, lon, range));
+        parkings.sort(sort.getComparator());
+        return parkings;
+    }
+
+    private static List<Parking> page(List<Parking> parkings, int offset, Integer limit) {
+        int from = Math.min(offset, parkings.size());
+        int to = limit == null ? parkings.size() : (int) Math.min((long) from + limit, parkings.size());
+        // A view of the list, the parkings are written as they are without copying them
+        return parkings.subList(from, to);
+    }
+
+    private static List<Parking> filterInRange(ParkingSnapshot snapshot, Double lat, Double lon, Double range) {
+        // Filter those in range if needed, only the parkings near the position have their distance computed
+        if (lat != null && lon != null) {
+            return snapshot.getSpatialIndex().findInRange(lat, lon, range);
+        }
+        return snapshot.getParkings();
     }
 
     /**
-     * Retrieve all the {@link Parking} for a given city
-     * @param city  The city to retrieve the {@link Parking} from
-     * @return a {@link List} of all the {@link Parking}
+     * Retrieve the {@link Parking} of several cities that are in range of the given position (IF given), without
+     * blocking. The {@link com.instantsystem.demo.parking.entity.ParkingManager} of the cities not cached are retrieved
+     * with a single query, then all the cities are retrieved (built if needed) at the same time. Each city has its own
+     * status: an unknown city or a city that failed to build doesn't fail the others
+     * @param cities    The cities to retrieve the {@link Parking} from, a city given twice is answered once
+     * @param lat       The latitude of the position
+     * @param lon       The longitude of the position
+     * @param range     The range around the position in KM
+     * @return A {@link Mono} of the {@link CityParkings} of each city, in the order the cities are given
+     * @throws TooManyCitiesException (in the Mono) if more than parking.batch.max-cities cities are given
      */
-    public List<Parking> getParkings(String city) {
-        LOG.info("Retrieve all parkings for city {}", city);
-        return getParkings(city, null, null, null);
+    public Mono<List<CityParkings>> getAsyncParkingsOfCities(List<String> cities, Double lat, Double lon, Double range) {
+        long start = System.nanoTime();
+        List<String> distinctCities = cities.stream().distinct().collect(Collectors.toList());
+        if (distinctCities.size() > maxBatchCities) {
+            return Mono.error(new TooManyCitiesException(distinctCities.size(), maxBatchCities));
+        }
+        LOG.debug("Retrieve parkings of cities {}, filter by range ({} kilometers) around the user position lat : {}, lon : {}", distinctCities, range, lat, lon);
+        return parkingManagerService.getAsyncByCities(distinctCities)
+                .flatMapMany(parkingManagers -> Flux.fromIterable(distinctCities).flatMapSequential(city -> {
+                    if (!parkingManagers.containsKey(city)) {
+                        return Mono.just(failedCity(city, new NonExistingParkingManagerException(city)));
+                    }
+                    // The ParkingManager is now cached, the build of the city doesn't query the DB again
+                    return parkingSnapshotCache.getAsync(city)
+                            .map(snapshot -> {
+                                List<Parking> parkings = rangeTimer.record(() -> filterInRange(snapshot, lat, lon, range));
+                                logRangeSummary(start, snapshot, lat, lon, range, parkings.size());
+                                return new CityParkings(city, HttpStatus.OK.value(), null, parkings, snapshot.getVersion(), snapshot.getStaleSince());
+                            })
+                            .onErrorResume(e -> Mono.just(failedCity(city, e)));
+                }, Math.max(1, distinctCities.size())))
+                .collectList();
     }
 
     /**
-     * Retrieve all {@link Parking} in a city that are in range of the given position (IF given)
-     * @param city  The city to retrieve the {@link Parking} from
-     * @param lat   The latitude of the position
-     * @param lon   The longitude of the position
-     * @param range The range around the position in KM (can be in Miles but not implemented yet)
-     * @return A {@link List} of {@link Parking} that are in range of the given position if given
+     * @return  The {@link CityParkings} of a city that failed, with the status of the {@link ResponseStatus} of the
+     *          exception as if the city was requested alone, 500 if it has none
      */
-    public List<Parking> getParkings(String city, Double lat, Double lon, Double range) {
-        LOG.info("Retrieve parkings in city {}, filter by range ({} kilometers) around the user position lat : {}, lon : {}", city, range, lat, lon);
-        Position userPosition = null;
+    private static CityParkings failedCity(String city, Throwable e) {
+        ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+        HttpStatus status = responseStatus == null ? HttpStatus.INTERNAL_SERVER_ERROR : responseStatus.code();
+        if (status.is5xxServerError()) {
+            LOG.warn("Failed to retrieve the parkings of city {} requested with other cities: {}", city, e.getMessage());
+        }
+        return new CityParkings(city, status.value(), e.getMessage(), null, null, null);
+    }
+
+    private static void logRangeSummary(long start, ParkingSnapshot snapshot, Double lat, Double lon, Double range, int results) {
         if (lat != null && lon != null) {
-            userPosition = new Position(lat, lon);
+            logSummary(start, "range", snapshot, results, "lat", lat, "lon", lon, "range", range);
+        } else {
+            logSummary(start, "city", snapshot, results);
+        }
+    }
+
+    /**
+     * Retrieve the nearest {@link Parking} of a position in a city without blocking, only the parkings with enough
+     * remaining places if a minimum is given
+     * @param city                  The city to retrieve the {@link Parking} from
+     * @param lat                   The latitude of the position
+     * @param lon                   The longitude of the position
+     * @param k                     The maximal number of parkings returned
+     * @param minPlacesRemaining    The minimal number of remaining places of the parkings, null to not filter
+     * @return A {@link Mono} of the k nearest {@link NearbyParking}, the nearest first, with the version and
+     *         staleness of the snapshot they come from
+     * @throws InvalidParkingQueryException (in the Mono) if k is not between 1 and parking.nearest.max-k
+     */
+    public Mono<Versioned<List<NearbyParking>>> getAsyncNearestParkings(String city, double lat, double lon, int k, Integer minPlacesRemaining) {
+        long start = System.nanoTime();
+        LOG.debug("Retrieve the {} nearest parkings in city {} with at least {} places from the user position lat : {}, lon : {}", k, city, minPlacesRemaining, lat, lon);
+        if (k < 1 || k > maxNearestParkings) {
+            // The spatial index doubles the range searched until it has k parkings, a huge k would search the whole grid
+            return Mono.error(new InvalidParkingQueryException(String.format("Invalid k %d, expected between 1 and %d", k, maxNearestParkings)));
+        }
+        return parkingSnapshotCache.getAsync(city)
+                .map(snapshot -> {
+                    List<NearbyParking> parkings = nearestTimer.record(() -> findNearest(snapshot, lat, lon, k, minPlacesRemaining));
+                    logSummary(start, "nearest", snapshot, parkings.size(), "lat", lat, "lon", lon, "k", k, "minPlacesRemaining", minPlacesRemaining);
+                    return new Versioned<>(parkings, snapshot.getVersion(), snapshot.getStaleSince());
+                });
+    }
+
+    /**
+     * Retrieve the {@link Parking} in range of a position in all the cities, without knowing the city and without
+     * blocking. Only the cities whose bounds overlap the range (see {@link CityBoundsIndex}) are retrieved, up to
+     * parking.batch.max-cities at the same time. The k nearest parkings in range of each city are then merged in a
+     * heap of k parkings, nothing is sorted whole. A city that fails is left out of the result
+     * @param lat                   The latitude of the position
+     * @param lon                   The longitude of the position
+     * @param range                 The range around the position in KM
+     * @param k                     The maximal number of parkings returned
+     * @param minPlacesRemaining    The minimal number of remaining places of the parkings, null to not filter
+     * @return A {@link Mono} of the k nearest {@link NearbyParking} in range, the nearest first
+     * @throws InvalidParkingQueryException (in the Mono) if k is not between 1 and parking.nearest.max-k, or if the
+     *         range is not between 0 and parking.near.max-range
+     */
+    public Mono<List<NearbyParking>> getAsyncParkingsNear(double lat, double lon, double range, int k, Integer minPlacesRemaining) {
+        long start = System.nanoTime();
+        LOG.debug("Retrieve the {} nearest parkings with at least {} places in range ({} kilometers) of the user position lat : {}, lon : {}", k, minPlacesRemaining, range, lat, lon);
+        if (k < 1 || k > maxNearestParkings) {
+            return Mono.error(new InvalidParkingQueryException(String.format("Invalid k %d, expected between 1 and %d", k, maxNearestParkings)));
         }
-        // Retrieve associated parking manager
-        ParkingManager parkingManager = parkingManagerService.getByCity(city);
-        // Retrieve all parkings
-        List<Parking> allParkings = getAndBuildAllParkings(parkingManager);
-        // Filter those in range if needed
-        if (userPosition != null) {
-            Position finalUserPosition = userPosition;
-            allParkings = allParkings.stream().filter(parking -> isInRange(parking, finalUserPosition, range)).collect(Collectors.toList());
+        if (!(range > 0 && range <= maxNearRange)) {
+            // A huge range would match, and build, all the indexed cities
+            return Mono.error(new InvalidParkingQueryException(String.format("Invalid range %s, expected between 0 and %s kilometers", range, maxNearRange)));
+        }
+        List<String> cities = nearTimer.record(() -> cityBoundsIndex.findCities(lat, lon, range));
+        Predicate<Parking> filter = hasPlaces(minPlacesRemaining);
+        return Flux.fromIterable(cities)
+                .flatMap(city -> parkingSnapshotCache.getAsync(city)
+                        .map(snapshot -> rangeTimer.record(() -> snapshot.getSpatialIndex().findNearestInRange(lat, lon, range, k, filter)))
+                        .onErrorResume(e -> {
+                            if (e instanceof NonExistingParkingManagerException) {
+                                // Its ParkingManager was deleted since it was built
+                                cityBoundsIndex.remove(city);
+                            } else {
+                                LOG.warn("Failed to retrieve the parkings of city {} near lat : {}, lon : {}: {}", city, lat, lon, e.getMessage());
+                            }
+                            return Mono.empty();
+                        }), maxBatchCities)
+                .flatMapIterable(nearby -> nearby)
+                // Bounded max-heap of the k nearest of all the cities, the farthest on top is replaced by nearer ones
+                .collect(() -> new PriorityQueue<>(k + 1, BY_DISTANCE.reversed()), (nearest, parking) -> {
+                    nearest.add(parking);
+                    if (nearest.size() > k) {
+                        nearest.poll();
+                    }
+                })
+                .map(ParkingService::nearestFirst)
+                .doOnNext(parkings -> {
+                    if (LOG.isInfoEnabled()) {
+                        LOG.info("query=near lat={} lon={} range={} k={} minPlacesRemaining={} cities={} candidates={} results={} tookUs={}",
+                                lat, lon, range, k, minPlacesRemaining, cityBoundsIndex.getCityCount(), cities.size(), parkings.size(),
+                                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    }
+                });
+    }
+
+    private static List<NearbyParking> nearestFirst(PriorityQueue<NearbyParking> nearest) {
+        NearbyParking[] result = new NearbyParking[nearest.size()];
+        for (int r = result.length - 1; r >= 0; r--) {
+            result[r] = nearest.poll();
         }
-        // Return list
-        return allParkings;
+        return Arrays.asList(result);
+    }
+
+    private static Predicate<Parking> hasPlaces(Integer minPlacesRemaining) {
+        return parking -> minPlacesRemaining == null
+                || (parking.getNbPlacesRemaining() != null && parking.getNbPlacesRemaining() >= minPlacesRemaining);
+    }
+
+    private static List<NearbyParking> findNearest(ParkingSnapshot snapshot, double lat, double lon, int k, Integer minPlacesRemaining) {
+        return snapshot.getSpatialIndex().findNearest(lat, lon, k, hasPlaces(minPlacesRemaining));
     }
 
     /**
-     * Retrieve a specific parking by its name
+     * Retrieve a specific parking by its name without blocking
      * @param city  The city we are looking into
      * @param name  The name of the {@link Parking} we are fetching
-     * @return  The {@link Parking} object
-     * @throws  ParkingNotFoundException The parking is not found will return a 404 response
+     * @return  A {@link Mono} of the {@link Parking} object, with the version and staleness of the snapshot it
+     *          comes from
+     * @throws  ParkingNotFoundException (in the Mono) The parking is not found will return a 404 response
      */
-    public Parking getParking(String city, String name) {
-        LOG.info("Retrieve parking {} in city {}", name, city);
-        List<Parking> parkings = getParkings(city);
-        Optional<Parking> parking = parkings.stream().filter(p -> p.getName().equals(name)).findFirst();
-        if (!parking.isPresent()) {
+    public Mono<Versioned<Parking>> getAsyncParking(String city, String name) {
+        long start = System.nanoTime();
+        LOG.debug("Retrieve parking {} in city {}", name, city);
+        return parkingSnapshotCache.getAsync(city).map(snapshot -> {
+            Parking parking = findByName(snapshot, name);
+            logSummary(start, "name", snapshot, 1, "name", name);
+            return new Versioned<>(parking, snapshot.getVersion(), snapshot.getStaleSince());
+        });
+    }
+
+    private static Parking findByName(ParkingSnapshot snapshot, String name) {
+        Parking parking = snapshot.getParkingByName(name);
+        if (parking == null) {
             String message = new StringBuilder("Unable to find parking : ")
                     .append(name)
                     .append("for city ")
-                    .append(city).toString();
+                    .append(snapshot.getCity()).toString();
             LOG.warn(message);
             throw new ParkingNotFoundException(message);
         }
-        return parking.get();
+        return parking;
     }
 
     /**
-     * Retrieve all the parking and build the parking lists. We call each endpoint given in the {@link ParkingManager}
-     * and call buildParkingMap method to build the list of parkings
-     * @param parkingManager    The {@link ParkingManager} with the list of URLs to call and the mapper associated to
-     *                          convert the response into our {@link Parking} object
-     * @return  The List of {@link Parking} retrieved
-     * @throws BuildParkingException if we failed to build the list from a parsing error
+     * Retrieve a specific parking by its id without blocking
+     * @param city  The city we are looking into
+     * @param id    The id of the {@link Parking}, as given by the endpoints of the city
+     * @return  A {@link Mono} of the {@link Parking} object, with the version and staleness of the snapshot it
+     *          comes from
+     * @throws  ParkingNotFoundException (in the Mono) The parking is not found will return a 404 response
      */
-    private List<Parking> getAndBuildAllParkings(ParkingManager parkingManager) {
-        LOG.info("Retrieve and build parking list for city {} using parkingManager {}", parkingManager.getCity(), parkingManager.getId());
-        Map<String, Parking> parkingMap = new HashMap<>();
-        // Loop through all the endpoint dedicated to build the parking list
-        for (RequestData requestData : parkingManager.getRequestsData()) {
-            WebClientManager manager = new WebClientManager();
-            // Call URL to retrieve the data to build
-            String body = manager.makeHttpCall(requestData.getUrl(), requestData.getMethod(), parkingManager.getCity());
-            try {
-                //Convert String response to JSONObject
-                JSONObject jsonObject = new JSONObject(body);
-                parkingMap = buildParkingMap(parkingManager.getCity(), parkingMap, jsonObject, requestData.getiSMapper());
-            } catch (JSONException e) {
-                LOG.error(String.format("Failed to parse response from %s with city %s", requestData.getUrl(), parkingManager.getCity()), e);
-                String message = String.format("Failed to retrieve parkings for city %s", parkingManager.getCity());
-                throw new BuildParkingException(message);
-            } catch (PathNotFoundException e) {
-                LOG.error(String.format("Failed to parse response from endpoint %s with city %s", requestData.getUrl(), parkingManager.getCity()), e);
-                String message = String.format("Failed to retrieve parking for city %s\n We were not able to map the data, please contact your administrator.", parkingManager.getCity());
-                throw new InstantSystemMapperException(message);
-            }
-        }
-        return new ArrayList<>(parkingMap.values());
+    public Mono<Versioned<Parking>> getAsyncParkingById(String city, String id) {
+        long start = System.nanoTime();
+        LOG.debug("Retrieve parking with id {} in city {}", id, city);
+        return parkingSnapshotCache.getAsync(city).map(snapshot -> {
+            Parking parking = findById(snapshot, id);
+            logSummary(start, "id", snapshot, 1, "id", id);
+            return new Versioned<>(parking, snapshot.getVersion(), snapshot.getStaleSince());
+        });
     }
 
-    /**
-     * Build the parking map, we extract each data if they are defined in the current {@link ISMapper}
-     * We populate the parkingMap given and return it, if parking are already defined they will be updated, previous
-     * values will not be erased
-     * @param city          The city we populate the parking list for
-     * @param parkingMap    The map of parking in the city, key is the parking id (from endpoint) value is the parking object
-     * @param json          The response body as {@link JSONObject} we received from the endpoint
-     * @param mapper        The mapper define in {@link ParkingManager} to convert the json body values to our {@link Parking}
-     * @return              The parkingMap filled/updated
-     */
-    private Map<String, Parking> buildParkingMap(String city, Map<String, Parking> parkingMap, JSONObject json, ISMapper mapper) {
-        LOG.info("Building city {} parking list from json response body", city);
-        ISFields iSFields = mapper.getiSFields();
-
-        // Retrieve the list of fields we got from the endpoint
-        JSONArray elements = json.getJSONArray(mapper.getListFieldPath());
-
-        for (int i = 0; i < elements.length(); i++) {
-            JSONObject element = elements.getJSONObject(i);
-            Parking parking = null;
-            // Parking not in map (or map empty) create a new parking entry
-            if (parkingMap.isEmpty() || !parkingMap.containsKey(JsonHelper.extractStringValueFromJson(element, iSFields.getId()))) {
-                parking = new Parking();
-                parking.setId(JsonHelper.extractStringValueFromJson(element, iSFields.getId()));
-            } else {    // Parking already exists, retrieve it to populate it
-                parking = parkingMap.get(JsonHelper.extractStringValueFromJson(element, iSFields.getId()));
-            }
-
-            // Setting the city from param
-            parking.setCity(city);
-
-            // Set only the fields that are defined in the mapper ISFields
-            if (iSFields.getName() != null)
-                parking.setName(JsonHelper.extractStringValueFromJson(element, iSFields.getName()));
-            if (iSFields.getNbPlaces() != null)
-                parking.setNbPlaces(JsonHelper.extractIntegerValueFromJson(element, iSFields.getNbPlaces()));
-            if (iSFields.getNbPlacesRemaining() != null)
-                parking.setNbPlacesRemaining(JsonHelper.extractIntegerValueFromJson(element, iSFields.getNbPlacesRemaining()));
-            if (iSFields.getDescription() != null)
-                parking.setDescription(JsonHelper.extractStringValueFromJson(element, iSFields.getDescription()));
-            if (iSFields.getLongitude() != null && iSFields.getLatitude() != null) {
-                double latitude = JsonHelper.extractDoubleValueFromJson(element, iSFields.getLatitude());
-                double longitude = JsonHelper.extractDoubleValueFromJson(element, iSFields.getLongitude());
-                parking.setPosition(new Position(latitude, longitude));
-            }
-
-            // Add the parking to the map, id as key
-            parkingMap.put(parking.getId(), parking);
-        }
-        return parkingMap;
+    private static Parking findById(ParkingSnapshot snapshot, String id) {
+        Parking parking = snapshot.getParkingById(id);
+        if (parking == null) {
+            String message = String.format("Unable to find parking with id : %s for city %s", id, snapshot.getCity());
+            LOG.warn(message);
+            throw new ParkingNotFoundException(message);
+        }
+        return parking;
     }
 
     /**
-     * Check the distance between two points, if they are under a given range return true, false otherwise.
-     * Check user and parking position, if not set return false
-     * @param parking   The parking to check
-     * @param position  The user's position
-     * @param range     The maximal range acceptable between the two object
-     * @return boolean true if in range false otherwise
+     * Log a request on a single line of key=value pairs once it is answered, instead of one line per step or per
+     * parking, e.g. {@code query=range city=Poitier lat=46.58 lon=0.35 range=0.5 parkings=26 results=3 version=5d41402a...
+     * stale=false tookUs=85}. Nothing is built when INFO is disabled for this class
+     * @param start     The {@link System#nanoTime()} the request started at
+     * @param query     The kind of request: city, range, nearest, name or id
+     * @param snapshot  The {@link ParkingSnapshot} the request was answered from
+     * @param results   The number of parkings returned
+     * @param criteria  The criteria of the request, as key then value pairs
      */
-    private boolean isInRange(Parking parking, Position position, Double range) {
-        LOG.info("Check if parking {} is under {} kilometers from user's position lat: {}, lon : {}", parking.getId(), range, position.getLatitude(), position.getLongitude());
-        if (parking.getPosition() == null || position == null) {
-            // Cannot be position was checked above
-            LOG.warn("Missing position for parking {} or user, excluded from result", parking.getId());
-            return false;
-        } else if (parking.getPosition().getLatitude() == null || parking.getPosition().getLongitude() == null) {
-            LOG.warn("Missing lat and/or lon for parking {}, excluded from result", parking.getId());
-            return false;
-        } else if (position.getLatitude() == null || position.getLongitude() == null) { // The position is checked before should not happen
-            LOG.warn("Missing lat and/or lon for user, parking {} excluded from result ", parking.getId());
-            return false;
-        }
-        Position parkingPosition = parking.getPosition();
-        double distance = DistanceCalculator.distance(position.getLatitude(), position.getLongitude(), parkingPosition.getLatitude(), parkingPosition.getLongitude(), "K");
-        return distance <= range;
+    private static void logSummary(long start, String query, ParkingSnapshot snapshot, int results, Object... criteria) {
+        if (!LOG.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(160).append("query=").append(query).append(" city=").append(snapshot.getCity());
+        for (int i = 0; i + 1 < criteria.length; i += 2) {
+            line.append(' ').append(criteria[i]).append('=').append(criteria[i + 1]);
+        }
+        line.append(" parkings=").append(snapshot.getParkings().size())
+                .append(" results=").append(results)
+                .append(" version=").append(snapshot.getVersion())
+                .append(" stale=").append(snapshot.getStaleSince() != null)
+                .append(" tookUs=").append(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        LOG.info(line.toString());
     }
 
 }
@@ -0,0 +1,276 @@
+package com.instantsystem.demo.parking.service;
+
+import com.instantsystem.demo.exception.RestCallException;
+import com.instantsystem.demo.parking.cache.ParkingFeed;
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.entity.ISMapper;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import com.instantsystem.demo.parking.entity.RequestData;
+import com.instantsystem.demo.parking.exception.BuildParkingException;
+import com.instantsystem.demo.parking.exception.InstantSystemMapperException;
+import com.instantsystem.demo.parking.exception.NonExistingParkingManagerException;
+import com.instantsystem.demo.parking.mapper.ParkingExtractionPlan;
+import com.instantsystem.demo.parking.mapper.ParkingMappingEngine;
+import com.instantsystem.demo.util.HttpValidators;
+import com.instantsystem.demo.util.LogSampler;
+import com.instantsystem.demo.util.UpstreamResponse;
+import com.instantsystem.demo.util.WebClientManager;
+import com.jayway.jsonpath.PathNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Build the {@link ParkingSnapshot} of a city, calling the endpoints of its {@link ParkingManager} and converting their
+ * responses to {@link Parking}.
+ * This service builds the city each time it is called, the concurrent requests on a city share the same build in
+ * the {@link com.instantsystem.demo.parking.cache.ParkingSnapshotCache}.
+ * The parsing of the responses and the merge of the feeds are timed per city (parking.parse and parking.mapping
+ * metrics), the responses that could not be converted are counted in the parking.mapping.errors metric
+ */
+@Service
+public class ParkingSnapshotService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingSnapshotService.class.getName());
+
+    /**
+     * Only one merged parking out of 100 is logged (at DEBUG), a city can have thousands of them
+     */
+    private static final LogSampler MERGE_SAMPLER = new LogSampler(100);
+    public ParkingManagerService parkingManagerService;
+    public WebClientManager webClientManager;
+    public ParkingMappingEngine parkingMappingEngine;
+
+    private final LongAdder skippedMappings = new LongAdder();
+
+    private final MeterRegistry meterRegistry;
+
+    public ParkingSnapshotService(ParkingManagerService parkingManagerService, WebClientManager webClientManager, ParkingMappingEngine parkingMappingEngine, MeterRegistry meterRegistry) {
+        this.parkingManagerService = parkingManagerService;
+        this.webClientManager = webClientManager;
+        this.parkingMappingEngine = parkingMappingEngine;
+        this.meterRegistry = meterRegistry;
+        FunctionCounter.builder("parking.mapping.skipped", skippedMappings, LongAdder::sum)
+                .description("Responses not parsed nor mapped because the endpoint answered they did not change")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Build the {@link ParkingSnapshot} of a city from its {@link ParkingManager} without blocking, reusing the fresh
+     * feeds of the previous snapshot
+     * @param city      The city to build
+     * @param previous  The previous {@link ParkingSnapshot} of the city, null if there is none
+     * @return  A {@link Mono} of the {@link ParkingSnapshot} of the city, built once subscribed
+     * @throws NonExistingParkingManagerException (in the Mono) if no {@link ParkingManager} is found for the given city
+     */
+    public Mono<ParkingSnapshot> buildAsyncSnapshot(String city, ParkingSnapshot previous) {
+        return parkingManagerService.getAsyncByCity(city)
+                .flatMap(parkingManager -> buildAsyncSnapshot(parkingManager, previous));
+    }
+
+    /**
+     * Build the {@link ParkingSnapshot} of a {@link ParkingManager}, blocking until it is built
+     * @see #buildAsyncSnapshot(ParkingManager, ParkingSnapshot)
+     */
+    public ParkingSnapshot buildSnapshot(ParkingManager parkingManager, ParkingSnapshot previous) {
+        return buildAsyncSnapshot(parkingManager, previous).block();
+    }
+
+    /**
+     * Retrieve all the parking and build the parking lists. We call all the endpoints given in the {@link ParkingManager}
+     * at the same time, each response is mapped as soon as it is received, then merged with buildParkingMap method in
+     * the order of the {@link RequestData} to build the list of parkings.
+     * The endpoints whose feed in the previous snapshot is still fresh (see {@link RequestData#getMaxAge()}) are not
+     * called, their feed is merged again with the new responses of the other endpoints. The other endpoints are called
+     * with the validators of their previous response, when they answer it did not change it is not parsed again.
+     * When an endpoint can't answer (timeout, connection error, 5xx, open circuit) its previous feed is used again as
+     * stale, the build only fails if there is no previous feed. A 4xx response or a response that can't be mapped
+     * fails the build
+     * @param parkingManager    The {@link ParkingManager} with the list of URLs to call and the mapper associated to
+     *                          convert the response into our {@link Parking} object
+     * @param previous          The previous {@link ParkingSnapshot} of the city, null if there is none
+     * @return  A {@link Mono} of the {@link ParkingSnapshot} of the {@link Parking} retrieved, built once subscribed
+     * @throws BuildParkingException (in the Mono) if we failed to build the list from a parsing error
+     */
+    public Mono<ParkingSnapshot> buildAsyncSnapshot(ParkingManager parkingManager, ParkingSnapshot previous) {
+        return Mono.defer(() -> {
+            LOG.debug("Retrieve and build parking list for city {} using parkingManager {}", parkingManager.getCity(), parkingManager.getId());
+            long start = System.nanoTime();
+            Instant now = Instant.now();
+            return Flux.fromIterable(parkingManager.getRequestsData())
+                    // Call all the URLs at once, responses are still emitted in the RequestData order
+                    .flatMapSequential(requestData -> {
+                        ParkingFeed previousFeed = previous == null ? null : previous.getFeed(requestData);
+                        if (previousFeed != null && previousFeed.isFresh(now)) {
+                            LOG.debug("Reuse response of {} for city {} fetched at {}", requestData.getUrl(), parkingManager.getCity(), previousFeed.getFetchedAt());
+                            return Mono.just(previousFeed);
+                        }
+                        HttpValidators validators = previousFeed == null ? null : previousFeed.getValidators();
+                        Duration timeout = requestData.getTimeout() == null ? null : Duration.ofMillis(requestData.getTimeout());
+                        return webClientManager.makeAsyncConditionalHttpCall(requestData.getUrl(), requestData.getMethod(), parkingManager.getCity(), validators, timeout)
+                                .flatMap(response -> {
+                                    if (response.isNotModified()) {
+                                        // Only a conditional call can be answered not modified, there is no feed to reuse otherwise
+                                        if (previousFeed == null) {
+                                            return Mono.error(new RestCallException(String.format("Not modified answered without previous response by the url : %s, for the city : %s", requestData.getUrl(), parkingManager.getCity())));
+                                        }
+                                        skippedMappings.increment();
+                                        return Mono.just(new ParkingFeed(requestData, previousFeed.getPlan(), previousFeed.getParkings(), Instant.now(), response.getValidators()));
+                                    }
+                                    return Mono.fromCallable(() -> mapResponse(parkingManager.getCity(), requestData, response));
+                                })
+                                .onErrorResume(RestCallException.class, e -> {
+                                    // A wrong call (4xx) would fail again, it is reported instead of hidden behind stale data
+                                    if (previousFeed == null || !e.isUnavailable()) {
+                                        return Mono.error(e);
+                                    }
+                                    LOG.warn("Reuse response of {} for city {} fetched at {}: {}", requestData.getUrl(), parkingManager.getCity(), previousFeed.getFetchedAt(), e.getMessage());
+                                    return Mono.just(previousFeed.asStale());
+                                });
+                    })
+                    // A failing call cancels the others
+                    .collectList()
+                    .map(feeds -> {
+                        // The parkings of the previous snapshot are shared with running requests, the feeds are merged into new ones
+                        Map<String, Parking> parkingMap = new HashMap<>();
+                        timer("parking.mapping", "Merge of the feeds of a city into its parkings", parkingManager.getCity()).record(() -> {
+                            for (ParkingFeed feed : feeds) {
+                                buildParkingMap(parkingManager.getCity(), parkingMap, feed.getPlan(), feed.getParkings());
+                            }
+                        });
+                        ParkingSnapshot snapshot = new ParkingSnapshot(parkingManager.getCity(), new ArrayList<>(parkingMap.values()), feeds, now);
+                        logBuildSummary(start, snapshot, previous);
+                        return snapshot;
+                    });
+        });
+    }
+
+    /**
+     * Convert the response body of an endpoint to the {@link Parking} it contains, using the {@link ISMapper} of its
+     * {@link RequestData}
+     * @param city          The city we are building the parkings for (LOG and exception uses)
+     * @param requestData   The {@link RequestData} the body was retrieved with
+     * @param response      The response of the endpoint
+     * @return  The {@link ParkingFeed} of the endpoint, only the fields of the mapper are set on its parkings
+     * @throws BuildParkingException if the body is not a valid json or the list of records is not found
+     * @throws InstantSystemMapperException if a field of the mapper is not found in the response
+     */
+    private ParkingFeed mapResponse(String city, RequestData requestData, UpstreamResponse response) {
+        ParkingExtractionPlan plan = parkingMappingEngine.getPlan(requestData.getiSMapper());
+        Timer.Sample sample = Timer.start();
+        try {
+            List<Parking> parkings = parkingMappingEngine.map(response.getBody(), plan);
+            sample.stop(timer("parking.parse", "Parsing of the responses of the endpoints of a city", city));
+            return new ParkingFeed(requestData, plan, parkings, Instant.now(), response.getValidators());
+        } catch (IOException e) {
+            countMappingError(city, "parse");
+            LOG.error("Failed to parse response from {} with city {}", requestData.getUrl(), city, e);
+            String message = String.format("Failed to retrieve parkings for city %s", city);
+            throw new BuildParkingException(message);
+        } catch (PathNotFoundException e) {
+            countMappingError(city, "path_not_found");
+            LOG.error("Failed to parse response from endpoint {} with city {}", requestData.getUrl(), city, e);
+            String message = String.format("Failed to retrieve parking for city %s\n We were not able to map the data, please contact your administrator.", city);
+            throw new InstantSystemMapperException(message);
+        }
+    }
+
+    /**
+     * Log a build on a single line of key=value pairs: the endpoints whose feed was reused because still fresh, the
+     * ones that answered not modified, the ones that failed and were replaced by their stale feed, and the result
+     * e.g. {@code build city=Poitier endpoints=2 reused=1 notModified=0 stale=0 parkings=26 version=5d41402a... tookMs=12}
+     */
+    private static void logBuildSummary(long start, ParkingSnapshot snapshot, ParkingSnapshot previous) {
+        if (!LOG.isInfoEnabled()) {
+            return;
+        }
+        int reused = 0;
+        int notModified = 0;
+        int stale = 0;
+        for (ParkingFeed feed : snapshot.getFeeds()) {
+            ParkingFeed previousFeed = previous == null ? null : previous.getFeed(feed.getRequestData());
+            if (feed.isStale()) {
+                stale++;
+            } else if (feed == previousFeed) {
+                reused++;
+            } else if (previousFeed != null && feed.getParkings() == previousFeed.getParkings()) {
+                notModified++;
+            }
+        }
+        LOG.info("build city={} endpoints={} reused={} notModified={} stale={} parkings={} version={} tookMs={}",
+                snapshot.getCity(), snapshot.getFeeds().size(), reused, notModified, stale, snapshot.getParkings().size(),
+                snapshot.getVersion(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Timer timer(String name, String description, String city) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("city", city)
+                .register(meterRegistry);
+    }
+
+    private void countMappingError(String city, String cause) {
+        Counter.builder("parking.mapping.errors")
+                .description("Responses of the endpoints that could not be converted to parkings")
+                .tags("city", city, "cause", cause)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * @return  The number of responses not parsed nor mapped because the endpoint answered they did not change
+     */
+    public long getSkippedMappingCount() {
+        return skippedMappings.sum();
+    }
+
+    /**
+     * Build the parking map, we merge the fields defined in the current {@link ISMapper} of each {@link Parking} extracted
+     * We populate the parkingMap given and return it, if parking are already defined they will be updated, previous
+     * values will not be erased
+     * @param city          The city we populate the parking list for
+     * @param parkingMap    The map of parking in the city, key is the parking id (from endpoint) value is the parking object
+     * @param plan          The {@link ParkingExtractionPlan} of the mapper the parkings were extracted with
+     * @param parkings      The {@link Parking} extracted from the response of the endpoint
+     * @return              The parkingMap filled/updated
+     */
+    private Map<String, Parking> buildParkingMap(String city, Map<String, Parking> parkingMap, ParkingExtractionPlan plan, List<Parking> parkings) {
+        LOG.debug("Building city {} parking list from {} extracted parkings", city, parkings.size());
+        boolean debug = LOG.isDebugEnabled();
+        for (Parking extracted : parkings) {
+            Parking parking = parkingMap.get(extracted.getId());
+            // Parking not in map (or map empty) create a new parking entry, otherwise populate the existing one
+            if (parking == null) {
+                parking = new Parking();
+                parking.setId(extracted.getId());
+                // Add the parking to the map, id as key
+                parkingMap.put(parking.getId(), parking);
+            }
+            // Setting the city from param
+            parking.setCity(city);
+            // Set only the fields that are defined in the mapper ISFields
+            plan.merge(extracted, parking);
+            if (debug && MERGE_SAMPLER.sample()) {
+                LOG.debug("Merged parking {} of city {} (1 out of {} logged)", parking.getId(), city, MERGE_SAMPLER.getRate());
+            }
+        }
+        return parkingMap;
+    }
+}
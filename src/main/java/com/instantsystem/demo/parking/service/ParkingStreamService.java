@@ -0,0 +1,147 @@
+package com.instantsystem.demo.parking.service;
+
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
+import com.instantsystem.demo.parking.entity.ParkingUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stream the {@link ParkingUpdate} of a city: its whole {@link ParkingSnapshot} first, then the parkings that changed
+ * each time it is rebuilt.
+ * All the subscribers of a city share the same refresh of the city and the same diff between two snapshots, the number
+ * of subscribers doesn't change the number of calls to the endpoints. A subscriber that doesn't consume its updates
+ * fast enough is dropped once it has maxPendingUpdates updates waiting, so it doesn't hold the snapshots in memory.
+ */
+@Service
+public class ParkingStreamService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingStreamService.class.getName());
+    public ParkingSnapshotCache parkingSnapshotCache;
+
+    private final Duration refreshInterval;
+
+    private final int maxPendingUpdates;
+
+    private final Map<String, Flux<SnapshotChange>> cityChanges = new ConcurrentHashMap<>();
+
+    public ParkingStreamService(ParkingSnapshotCache parkingSnapshotCache,
+                                @Value("${parking.stream.refresh-interval:15s}") Duration refreshInterval,
+                                @Value("${parking.stream.max-pending-updates:16}") int maxPendingUpdates) {
+        this.parkingSnapshotCache = parkingSnapshotCache;
+        this.refreshInterval = refreshInterval;
+        this.maxPendingUpdates = maxPendingUpdates;
+    }
+
+    /**
+     * Stream the parkings of a city, the first {@link ParkingUpdate} contains all of them, the next ones only the
+     * parkings changed since the previous update. A rebuild without change sends nothing
+     * @param city  The city to stream the parkings of
+     * @return  A {@link Flux} of {@link ParkingUpdate}, that completes only if the subscriber is too slow
+     * @throws com.instantsystem.demo.parking.exception.NonExistingParkingManagerException (in the Flux) if the city
+     *         has no associated ParkingManager
+     */
+    public Flux<ParkingUpdate> streamParkings(String city) {
+        LOG.debug("Stream parkings of city {}", city);
+        return parkingSnapshotCache.getAsync(city).flatMapMany(first -> {
+            // The last snapshot sent to this subscriber, the next update is computed from it
+            AtomicReference<ParkingSnapshot> sent = new AtomicReference<>(first);
+            // An overflowing buffer completes the stream right away, even if the subscriber requests nothing
+            Sinks.One<Boolean> dropped = Sinks.one();
+            Flux<ParkingUpdate> changes = getCityChanges(city)
+                    .onBackpressureBuffer(maxPendingUpdates, change -> {
+                        if (dropped.tryEmitValue(Boolean.TRUE).isSuccess()) {
+                            LOG.warn("Drop a subscriber of the parkings of city {}, more than {} updates are waiting", city, maxPendingUpdates);
+                        }
+                    }, BufferOverflowStrategy.DROP_LATEST)
+                    .filter(change -> change.current != sent.get())
+                    .map(change -> {
+                        ParkingSnapshot previous = sent.getAndSet(change.current);
+                        // The shared diff is only valid if this subscriber was sent its previous snapshot
+                        return change.previous == previous ? change.update : changes(previous, change.current);
+                    })
+                    .filter(update -> !update.getParkings().isEmpty() || !update.getRemoved().isEmpty());
+            return Flux.concat(Mono.just(snapshot(first)), changes)
+                    .takeUntilOther(dropped.asMono());
+        });
+    }
+
+    /**
+     * The changes of a city shared by all its subscribers, the city is refreshed and diffed only while it has
+     * subscribers
+     */
+    private Flux<SnapshotChange> getCityChanges(String city) {
+        return cityChanges.computeIfAbsent(city, c -> {
+            AtomicReference<Flux<SnapshotChange>> shared = new AtomicReference<>();
+            shared.set(Flux.defer(() -> {
+                        AtomicReference<ParkingSnapshot> last = new AtomicReference<>(parkingSnapshotCache.getIfPresent(city));
+                        Flux<SnapshotChange> changes = parkingSnapshotCache.getUpdates()
+                                .filter(snapshot -> city.equals(snapshot.getCity()) && snapshot != last.get())
+                                .map(snapshot -> new SnapshotChange(last.getAndSet(snapshot), snapshot));
+                        Flux<SnapshotChange> refreshes = Flux.interval(refreshInterval)
+                                .doOnNext(tick -> refreshIfOlder(city))
+                                .thenMany(Flux.empty());
+                        return Flux.merge(changes, refreshes);
+                    })
+                    // Only removes this flux, the city may already have a new one if it was subscribed again meanwhile
+                    .doFinally(signal -> cityChanges.remove(city, shared.get()))
+                    .publish()
+                    .refCount());
+            return shared.get();
+        });
+    }
+
+    /**
+     * Refresh a city only if it was not already rebuilt recently, by the cache or the polling
+     */
+    private void refreshIfOlder(String city) {
+        ParkingSnapshot current = parkingSnapshotCache.getIfPresent(city);
+        if (current == null || current.getBuiltAt().isBefore(Instant.now().minus(refreshInterval.dividedBy(2)))) {
+            parkingSnapshotCache.refresh(city);
+        }
+    }
+
+    static ParkingUpdate snapshot(ParkingSnapshot snapshot) {
+        return new ParkingUpdate(ParkingUpdate.Type.SNAPSHOT, snapshot.getCity(), snapshot.getBuiltAt(),
+                snapshot.getParkings(), Collections.emptyList());
+    }
+
+    static ParkingUpdate changes(ParkingSnapshot previous, ParkingSnapshot current) {
+        if (previous == null) {
+            return snapshot(current);
+        }
+        return new ParkingUpdate(ParkingUpdate.Type.CHANGES, current.getCity(), current.getBuiltAt(),
+                current.getChangedSince(previous), current.getRemovedSince(previous));
+    }
+
+    /**
+     * A new snapshot of a city with its diff from the previous one, computed once for all the subscribers
+     */
+    private static class SnapshotChange {
+
+        final ParkingSnapshot previous;
+
+        final ParkingSnapshot current;
+
+        final ParkingUpdate update;
+
+        SnapshotChange(ParkingSnapshot previous, ParkingSnapshot current) {
+            this.previous = previous;
+            this.current = current;
+            this.update = changes(previous, current);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.instantsystem.demo.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limit the number of calls running at the same time to an upstream host, so a slow host can't hold all the resources
+ * of the application. A call over the limit is rejected right away instead of waiting
+ */
+public class Bulkhead {
+
+    private final int maxConcurrentCalls;
+
+    private final AtomicInteger runningCalls = new AtomicInteger();
+
+    public Bulkhead(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    /**
+     * Reserve a place for a call, it must be released with {@link #release()} once the call ended
+     * @return true if the call can be made, false if maxConcurrentCalls calls are already running
+     */
+    public boolean tryAcquire() {
+        int running;
+        do {
+            running = runningCalls.get();
+            if (running >= maxConcurrentCalls) {
+                return false;
+            }
+        } while (!runningCalls.compareAndSet(running, running + 1));
+        return true;
+    }
+
+    public void release() {
+        runningCalls.decrementAndGet();
+    }
+
+    public int getRunningCalls() {
+        return runningCalls.get();
+    }
+}
@@ -0,0 +1,120 @@
+package com.instantsystem.demo.util;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker of an endpoint: after failureThreshold consecutive failures the circuit opens and the calls are
+ * rejected without reaching the endpoint. Once openDuration is passed one trial call is let through, the circuit closes
+ * if it succeeds and opens again if it fails. A trial that ends without result (rejected further on, cancelled) must be
+ * released so the next call can be the trial, a trial never released is replaced after openDuration
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * The permission given to a call: rejected, a call of the closed circuit or the trial of the half-open circuit
+     */
+    public enum Permit {
+        REJECTED,
+        CALL,
+        TRIAL
+    }
+
+    private final int failureThreshold;
+
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private long trialStartedAt;
+
+    private boolean trialRunning;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Check if a call can be made
+     * @return true if the circuit is closed or the call is the trial of a half-open circuit, false if it is rejected
+     */
+    public boolean tryAcquire() {
+        return acquire() != Permit.REJECTED;
+    }
+
+    /**
+     * Ask for the permission to make a call
+     * @return CALL if the circuit is closed, TRIAL if the call is the trial of a half-open circuit, to be released
+     *         with {@link #release(Permit)} if it ends without result, REJECTED otherwise
+     */
+    public synchronized Permit acquire() {
+        long now = System.nanoTime();
+        switch (state) {
+            case OPEN:
+                if (now - openedAt < openDurationNanos) {
+                    return Permit.REJECTED;
+                }
+                state = State.HALF_OPEN;
+                return startTrial(now);
+            case HALF_OPEN:
+                if (trialRunning && now - trialStartedAt < openDurationNanos) {
+                    return Permit.REJECTED;
+                }
+                return startTrial(now);
+            default:
+                return Permit.CALL;
+        }
+    }
+
+    private Permit startTrial(long now) {
+        trialRunning = true;
+        trialStartedAt = now;
+        return Permit.TRIAL;
+    }
+
+    /**
+     * Give back the permission of a call that ended with neither a success nor a failure, e.g. rejected by the
+     * {@link Bulkhead} or cancelled. A released trial lets the next call be the trial right away
+     * @param permit    The permission given to the call
+     */
+    public synchronized void release(Permit permit) {
+        if (permit == Permit.TRIAL && state == State.HALF_OPEN) {
+            trialRunning = false;
+        }
+    }
+
+    /**
+     * Record a successful call, the circuit closes
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialRunning = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Record a failed call, the circuit opens after failureThreshold consecutive failures or a failed trial
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        trialRunning = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
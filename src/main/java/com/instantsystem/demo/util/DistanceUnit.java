@@ -0,0 +1,34 @@
+package com.instantsystem.demo.util;
+
+/**
+ * The units of the distances computed by {@link DistanceCalculator}
+ */
+public enum DistanceUnit {
+    KILOMETERS(1),
+    MILES(1 / 1.609344),
+    NAUTICAL_MILES(1 / 1.852);
+
+    private final double perKilometer;
+
+    DistanceUnit(double perKilometer) {
+        this.perKilometer = perKilometer;
+    }
+
+    /**
+     * Convert a distance in kilometers to this unit
+     * @param kilometers    The distance in kilometers
+     * @return  The distance in this unit
+     */
+    public double fromKilometers(double kilometers) {
+        return kilometers * perKilometer;
+    }
+
+    /**
+     * Convert a distance in this unit to kilometers
+     * @param distance  The distance in this unit
+     * @return  The distance in kilometers
+     */
+    public double toKilometers(double distance) {
+        return distance / perKilometer;
+    }
+}
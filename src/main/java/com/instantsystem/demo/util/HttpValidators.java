@@ -0,0 +1,40 @@
+package com.instantsystem.demo.util;
+
+/**
+ * The validators of a response (ETag and Last-Modified headers), sent back in the next request so the server can
+ * answer 304 Not Modified instead of sending the same body again. The length of the body is kept to count the bytes
+ * not downloaded
+ */
+public class HttpValidators {
+
+    private final String eTag;
+
+    private final String lastModified;
+
+    private final long contentLength;
+
+    public HttpValidators(String eTag, String lastModified, long contentLength) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * @return true if the server gave no validator, a conditional request is then not possible
+     */
+    public boolean isEmpty() {
+        return eTag == null && lastModified == null;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+}
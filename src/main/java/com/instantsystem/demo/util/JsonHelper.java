@@ -1,10 +1,38 @@
 package com.instantsystem.demo.util;
 
+import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import org.json.JSONObject;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class JsonHelper {
 
+    /**
+     * The compiled {@link JsonPath} by path, the paths come from the {@link com.instantsystem.demo.parking.entity.ISFields}
+     * of the mappers so there is only a few of them and we never have to compile the same path twice
+     */
+    private static final Map<String, JsonPath> COMPILED_PATHS = new ConcurrentHashMap<>();
+
+    /**
+     * Compile a path to the data, or retrieve it from the cache if it was already compiled
+     * @param path  The path to the data
+     * @return  The compiled {@link JsonPath}
+     */
+    public static JsonPath compilePath(String path) {
+        return COMPILED_PATHS.computeIfAbsent(path, p -> JsonPath.compile("$." + p));
+    }
+
+    /**
+     * Parse a {@link JSONObject} once so all its fields can be read from the returned document
+     * @param element   The {@link JSONObject} to parse
+     * @return  The {@link DocumentContext} to read the data from
+     */
+    public static DocumentContext parse(JSONObject element) {
+        return JsonPath.parse(element.toString());
+    }
+
     /**
      * Retrieve an element from {@link JSONObject} as {@link String}
      * @param element   The {@link JSONObject} we extract the data from
@@ -15,6 +43,16 @@ public class JsonHelper {
         return (String) extractValueFromJson(element, path, String.class);
     }
 
+    /**
+     * Retrieve an element from an already parsed document as {@link String}
+     * @param document  The {@link DocumentContext} we extract the data from
+     * @param path      The compiled path to the data
+     * @return  A {@link String} value of the data we extracted
+     */
+    public static String extractStringValueFromJson(DocumentContext document, JsonPath path) {
+        return document.read(path, String.class);
+    }
+
 
     /**
      * Retrieve an element from {@link JSONObject} as {@link Double}
@@ -26,6 +64,16 @@ public class JsonHelper {
         return (Double) extractValueFromJson(element, path, Double.class);
     }
 
+    /**
+     * Retrieve an element from an already parsed document as {@link Double}
+     * @param document  The {@link DocumentContext} we extract the data from
+     * @param path      The compiled path to the data
+     * @return  A {@link Double} value of the data we extracted
+     */
+    public static Double extractDoubleValueFromJson(DocumentContext document, JsonPath path) {
+        return document.read(path, Double.class);
+    }
+
 
     /**
      * Retrieve an element from {@link JSONObject} as {@link Integer}
@@ -37,6 +85,16 @@ public class JsonHelper {
         return (Integer) extractValueFromJson(element, path, Integer.class);
     }
 
+    /**
+     * Retrieve an element from an already parsed document as {@link Integer}
+     * @param document  The {@link DocumentContext} we extract the data from
+     * @param path      The compiled path to the data
+     * @return  A {@link Integer} value of the data we extracted
+     */
+    public static Integer extractIntegerValueFromJson(DocumentContext document, JsonPath path) {
+        return document.read(path, Integer.class);
+    }
+
 
     /**
      * Retrieve an element from {@link JSONObject} as {@link Object} that can be cast into whatever {@link Class} we gave
@@ -46,6 +104,6 @@ public class JsonHelper {
      * @return  A {@link Object} value of the data we extracted
      */
     public static Object extractValueFromJson(JSONObject element, String path, Class aClass) {
-        return JsonPath.parse(element.toString()).read("$." + path, aClass);
+        return parse(element).read(compilePath(path), aClass);
     }
 }
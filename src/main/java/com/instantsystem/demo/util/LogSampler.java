@@ -0,0 +1,36 @@
+package com.instantsystem.demo.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Let one call out of a rate pass, to log a sample of the elements of a loop instead of one line per element.
+ * It must be checked after the level of the logger so nothing is counted while the level is disabled:
+ * {@code if (LOG.isDebugEnabled() && SAMPLER.sample()) LOG.debug(...)}
+ */
+public class LogSampler {
+
+    private final long rate;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    /**
+     * @param rate  One call out of rate is sampled, the first one included. 1 samples all the calls
+     */
+    public LogSampler(long rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("The sampling rate must be at least 1, got " + rate);
+        }
+        this.rate = rate;
+    }
+
+    /**
+     * @return true if this call is sampled and should be logged
+     */
+    public boolean sample() {
+        return calls.getAndIncrement() % rate == 0;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+}
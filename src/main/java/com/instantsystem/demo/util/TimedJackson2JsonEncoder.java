@@ -0,0 +1,36 @@
+package com.instantsystem.demo.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeType;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encoder of the WebFlux responses recording the time spent encoding each value (a body, or an event of a
+ * stream)
+ */
+public class TimedJackson2JsonEncoder extends Jackson2JsonEncoder {
+
+    private final Timer timer;
+
+    public TimedJackson2JsonEncoder(ObjectMapper objectMapper, Timer timer) {
+        super(objectMapper);
+        this.timer = timer;
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        long start = System.nanoTime();
+        try {
+            return super.encodeValue(value, bufferFactory, valueType, mimeType, hints);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.instantsystem.demo.util;
+
+/**
+ * The response of a conditional call made by {@link WebClientManager}: the body with its validators, or only the
+ * validators if the server answered the body did not change since the previous call
+ */
+public class UpstreamResponse {
+
+    private final byte[] body;
+
+    private final HttpValidators validators;
+
+    private final boolean notModified;
+
+    public UpstreamResponse(byte[] body, HttpValidators validators, boolean notModified) {
+        this.body = body;
+        this.validators = validators;
+        this.notModified = notModified;
+    }
+
+    /**
+     * @return  The response body as received, not decoded, null if not modified
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public HttpValidators getValidators() {
+        return validators;
+    }
+
+    /**
+     * @return true if the server answered 304 Not Modified, the previous body is still valid
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+}
@@ -0,0 +1,42 @@
+package com.instantsystem.demo.util;
+
+import java.time.Instant;
+
+/**
+ * A value with the version of the data it was computed from, the same version always gives the same value. The data
+ * can be stale (its source could not be reached), staleSince is then the time it was fetched at
+ * @param <T>   The type of the value
+ */
+public class Versioned<T> {
+
+    private final T value;
+
+    private final String version;
+
+    private final Instant staleSince;
+
+    public Versioned(T value, String version) {
+        this(value, version, null);
+    }
+
+    public Versioned(T value, String version, Instant staleSince) {
+        this.value = value;
+        this.version = version;
+        this.staleSince = staleSince;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return  The time the stale data was fetched at, null if the data is fresh
+     */
+    public Instant getStaleSince() {
+        return staleSince;
+    }
+}
@@ -2,18 +2,74 @@ package com.instantsystem.demo.util;
 
 import com.instantsystem.demo.exception.RestCallException;
 import com.instantsystem.demo.exception.UnexpectedHttpMethodException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
 public class WebClientManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(WebClientManager.class.getName());
     WebClient client;
 
-    public WebClientManager() {
-        client = WebClient.create();
+    private final LongAdder notModifiedResponses = new LongAdder();
+
+    private final LongAdder bytesSaved = new LongAdder();
+
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    private final int failureThreshold;
+
+    private final Duration openDuration;
+
+    private final int maxConcurrentCallsPerHost;
+
+    private final MeterRegistry meterRegistry;
+
+    public WebClientManager(WebClient upstreamWebClient,
+                            @Value("${upstream.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                            @Value("${upstream.circuit-breaker.open-duration:30s}") Duration openDuration,
+                            @Value("${upstream.bulkhead.max-concurrent-calls-per-host:20}") int maxConcurrentCallsPerHost,
+                            MeterRegistry meterRegistry) {
+        client = upstreamWebClient;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.maxConcurrentCallsPerHost = maxConcurrentCallsPerHost;
+        this.meterRegistry = meterRegistry;
+        FunctionCounter.builder("parking.upstream.not-modified", notModifiedResponses, LongAdder::sum)
+                .description("Conditional calls answered 304 Not Modified")
+                .register(meterRegistry);
+        FunctionCounter.builder("parking.upstream.bytes-saved", bytesSaved, LongAdder::sum)
+                .description("Bytes not downloaded thanks to the 304 Not Modified answers")
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
 
     /**
@@ -24,25 +80,195 @@ public class WebClientManager {
      * @return  The Response as a {@link String}
      */
     public String makeHttpCall(String url, String httpMethod, String city) {
-        LOG.info("Making HTTP Call to url {}, with method {} for city {}", url, httpMethod, city);
-        String body = null;
-        try {
-            body = client
-                    .method(extractHttpMethod(httpMethod, city, url))
+        return makeAsyncHttpCall(url, httpMethod, city).block();
+    }
+
+    /**
+     * Call a URL using {@link WebClient} without blocking, the call is only made once the {@link Mono} is subscribed
+     * @param url           The URL to reach
+     * @param httpMethod    The Http method to use
+     * @param city          The city this Url is reach for (Log and exception use mostly)
+     * @return  A {@link Mono} of the Response as a {@link String}, in error with a {@link RestCallException} if the
+     *          call failed
+     * @throws UnexpectedHttpMethodException if the method is incorrect or not in the list
+     */
+    public Mono<String> makeAsyncHttpCall(String url, String httpMethod, String city) {
+        return makeAsyncConditionalHttpCall(url, httpMethod, city, null, null).map(response -> new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Call a URL using {@link WebClient} without blocking, with the validators of the previous response so the server
+     * can answer 304 Not Modified instead of sending the same body again. The validators are only sent for GET.
+     * Each URL has its {@link CircuitBreaker} and each host its {@link Bulkhead}: the call is rejected without reaching
+     * the URL while its circuit is open or when too many calls to its host are running. Only the timeouts, connection
+     * errors and 5xx responses are failures of the circuit, a 4xx response means the host is up but the call is wrong.
+     * Each call is timed in the parking.upstream.calls metric and each failure or rejection counted in the
+     * parking.upstream.failures metric, both tagged with the city and the host
+     * @param url           The URL to reach
+     * @param httpMethod    The Http method to use
+     * @param city          The city this Url is reach for (Log and exception use mostly)
+     * @param validators    The {@link HttpValidators} of the previous response, null if there is none
+     * @param timeout       The maximal duration of the call, null for the default response timeout
+     * @return  A {@link Mono} of the {@link UpstreamResponse}, in error with a {@link RestCallException} if the call
+     *          failed or was rejected, unavailable unless the endpoint answered a 4xx
+     * @throws UnexpectedHttpMethodException if the method is incorrect or not in the list
+     */
+    public Mono<UpstreamResponse> makeAsyncConditionalHttpCall(String url, String httpMethod, String city, HttpValidators validators, Duration timeout) {
+        LOG.debug("Making HTTP Call to url {}, with method {} for city {}", url, httpMethod, city);
+        HttpMethod method = extractHttpMethod(httpMethod, city, url);
+        boolean conditional = method == HttpMethod.GET && validators != null && !validators.isEmpty();
+        String host = extractHost(url);
+        return Mono.defer(() -> {
+            CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(url, u -> new CircuitBreaker(failureThreshold, openDuration));
+            CircuitBreaker.Permit permit = circuitBreaker.acquire();
+            if (permit == CircuitBreaker.Permit.REJECTED) {
+                rejectedCalls.increment();
+                countFailure(city, host, "circuit_open");
+                return Mono.error(new RestCallException(String.format("Circuit open for the url : %s, for the city : %s", url, city), true));
+            }
+            Bulkhead bulkhead = bulkheads.computeIfAbsent(host, h -> new Bulkhead(maxConcurrentCallsPerHost));
+            if (!bulkhead.tryAcquire()) {
+                // The host was not reached, the circuit of the url learnt nothing
+                circuitBreaker.release(permit);
+                rejectedCalls.increment();
+                countFailure(city, host, "bulkhead_full");
+                return Mono.error(new RestCallException(String.format("Too many calls running to the host of the url : %s, for the city : %s", url, city), true));
+            }
+            Timer.Sample sample = Timer.start();
+            Mono<UpstreamResponse> call = client
+                    .method(method)
                     .uri(url)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-            // TODO Instead of two catch, create a handle exception method, with specific exception (Timeout, bad request, etc...)
-        } catch (UnexpectedHttpMethodException uhme) {
-            //Already logged and thrown, just rethrow
-            throw uhme;
-        }catch (Exception e) {
-            String message = String.format("Failed to reach the url : %s, with method : %s, for the city : %s", url, httpMethod, city);
-            LOG.error(message, e);
-            throw new RestCallException(message);
+                    .headers(headers -> {
+                        if (conditional && validators.getETag() != null) {
+                            headers.set(HttpHeaders.IF_NONE_MATCH, validators.getETag());
+                        }
+                        if (conditional && validators.getLastModified() != null) {
+                            headers.set(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified());
+                        }
+                    })
+                    .exchangeToMono(response -> {
+                        if (conditional && response.statusCode() == HttpStatus.NOT_MODIFIED) {
+                            LOG.debug("Response of url {} for city {} not modified", url, city);
+                            notModifiedResponses.increment();
+                            bytesSaved.add(validators.getContentLength());
+                            return response.releaseBody().thenReturn(new UpstreamResponse(null, validators, true));
+                        }
+                        if (!response.statusCode().is2xxSuccessful()) {
+                            return response.createException().flatMap(Mono::error);
+                        }
+                        ClientResponse.Headers headers = response.headers();
+                        // The bytes are handed to the json parser as received, without decoding them into a String
+                        return response.bodyToMono(byte[].class)
+                                .defaultIfEmpty(new byte[0])
+                                .map(body -> new UpstreamResponse(body, new HttpValidators(
+                                        headers.asHttpHeaders().getETag(),
+                                        headers.asHttpHeaders().getFirst(HttpHeaders.LAST_MODIFIED),
+                                        headers.contentLength().orElse(body.length)), false));
+                    });
+            if (timeout != null) {
+                call = call.timeout(timeout);
+            }
+            return call
+                    .doOnSuccess(response -> {
+                        circuitBreaker.onSuccess();
+                        sample.stop(callTimer(city, host, response.isNotModified() ? "not_modified" : "success"));
+                    })
+                    .doOnError(e -> {
+                        if (isUnavailable(e)) {
+                            circuitBreaker.onFailure();
+                            countFailure(city, host, e instanceof TimeoutException ? "timeout" : "error");
+                        } else {
+                            // The host answered, the call is wrong: the circuit must not open as if the host was down
+                            circuitBreaker.onSuccess();
+                            countFailure(city, host, "client_error");
+                        }
+                        sample.stop(callTimer(city, host, "error"));
+                    })
+                    .doFinally(signal -> {
+                        bulkhead.release();
+                        // A cancelled call ended without result, it must not hold the trial of the circuit
+                        if (signal == SignalType.CANCEL) {
+                            circuitBreaker.release(permit);
+                        }
+                    })
+                    .onErrorMap(e -> {
+                        String message = String.format("Failed to reach the url : %s, with method : %s, for the city : %s", url, httpMethod, city);
+                        LOG.error(message, e);
+                        return new RestCallException(message, isUnavailable(e));
+                    });
+        });
+    }
+
+    /**
+     * Check if a call failed because the endpoint could not answer: a timeout, a connection error or a 5xx response.
+     * A 4xx response or an invalid call (e.g. a url without scheme) is an error of the configuration of the city
+     */
+    private static boolean isUnavailable(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            return ((WebClientResponseException) e).getStatusCode().is5xxServerError();
+        }
+        return e instanceof TimeoutException
+                || e instanceof io.netty.handler.timeout.TimeoutException
+                || e instanceof WebClientRequestException
+                || e instanceof IOException;
+    }
+
+    private Timer callTimer(String city, String host, String outcome) {
+        return Timer.builder("parking.upstream.calls")
+                .description("Calls to the endpoints of the cities")
+                .tags("city", city, "host", host, "outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private void countFailure(String city, String host, String reason) {
+        Counter.builder("parking.upstream.failures")
+                .description("Calls to the endpoints of the cities that failed or were rejected")
+                .tags("city", city, "host", host, "reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Retrieve the state of the circuit of a URL
+     * @param url   The URL called
+     * @return  The {@link CircuitBreaker.State} of the URL, CLOSED if it was never called
+     */
+    public CircuitBreaker.State getCircuitState(String url) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(url);
+        return circuitBreaker == null ? CircuitBreaker.State.CLOSED : circuitBreaker.getState();
+    }
+
+    /**
+     * @return  The number of calls rejected by an open circuit or a full bulkhead
+     */
+    public long getRejectedCount() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * @return  The number of conditional calls answered 304 Not Modified
+     */
+    public long getNotModifiedCount() {
+        return notModifiedResponses.sum();
+    }
+
+    /**
+     * @return  The number of bytes not downloaded thanks to the 304 Not Modified answers
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    /**
+     * Retrieve the host of a URL, the bulkheads are per host
+     */
+    private static String extractHost(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? url : host;
+        } catch (IllegalArgumentException e) {
+            return url;
         }
-        return body;
     }
 
     /**
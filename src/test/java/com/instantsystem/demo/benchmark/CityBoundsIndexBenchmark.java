@@ -0,0 +1,60 @@
+package com.instantsystem.demo.benchmark;
+
+import com.instantsystem.demo.helper.SyntheticCity;
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.index.CityBoundsIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the search of the cities that can have parkings in range of a position, among generated cities spread
+ * over France (the first step of a search without city, before the parkings of these cities are searched).
+ * See the Benchmarks part of the README to run it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class CityBoundsIndexBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int cities;
+
+    private CityBoundsIndex index;
+
+    private double lat;
+
+    private double lon;
+
+    @Setup
+    public void setup() {
+        List<SyntheticCity> generated = SyntheticCity.generate(cities, 10, 100, 42);
+        index = new CityBoundsIndex(null);
+        for (SyntheticCity city : generated) {
+            index.update(new ParkingSnapshot(city.getName(), city.parkings(), Instant.now()));
+        }
+        lat = generated.get(0).getLatitude();
+        lon = generated.get(0).getLongitude();
+    }
+
+    @Benchmark
+    public List<String> findCities() {
+        return index.findCities(lat, lon, 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CityBoundsIndexBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
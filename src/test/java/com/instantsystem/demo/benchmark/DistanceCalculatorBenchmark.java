@@ -0,0 +1,121 @@
+package com.instantsystem.demo.benchmark;
+
+import com.instantsystem.demo.util.DistanceCalculator;
+import com.instantsystem.demo.util.DistanceUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the distance computations from one position to the parkings of a city (positions up to 10 km away): the
+ * law of cosines with a String unit as it was done before, the haversine and the equirectangular approximation one by
+ * one and in batch. The accuracy of each method against the haversine is printed at the end of the setup.
+ * See the Benchmarks part of the README to run it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class DistanceCalculatorBenchmark {
+
+    private static final double LAT = 46.58595805;
+
+    private static final double LON = 0.35129543;
+
+    @Param({"10000"})
+    private int count;
+
+    private double[] lats;
+
+    private double[] lons;
+
+    private double[] distances;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        lats = new double[count];
+        lons = new double[count];
+        distances = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = LAT + (random.nextDouble() - 0.5) * 0.18;
+            lons[i] = LON + (random.nextDouble() - 0.5) * 0.26;
+        }
+        double lawOfCosinesError = 0;
+        double fastError = 0;
+        for (int i = 0; i < count; i++) {
+            double exact = DistanceCalculator.distance(LAT, LON, lats[i], lons[i], DistanceUnit.KILOMETERS);
+            lawOfCosinesError = Math.max(lawOfCosinesError, Math.abs(lawOfCosines(LAT, LON, lats[i], lons[i], "K") - exact));
+            fastError = Math.max(fastError, Math.abs(DistanceCalculator.fastDistance(LAT, LON, lats[i], lons[i], DistanceUnit.KILOMETERS) - exact) / exact);
+        }
+        System.out.printf("%nMax error against haversine: law of cosines %.3e km, equirectangular %.3e (relative)%n", lawOfCosinesError, fastError);
+    }
+
+    @Benchmark
+    public void lawOfCosines(Blackhole blackhole) {
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(lawOfCosines(LAT, LON, lats[i], lons[i], "K"));
+        }
+    }
+
+    @Benchmark
+    public void haversine(Blackhole blackhole) {
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(DistanceCalculator.distance(LAT, LON, lats[i], lons[i], DistanceUnit.KILOMETERS));
+        }
+    }
+
+    @Benchmark
+    public void equirectangular(Blackhole blackhole) {
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(DistanceCalculator.fastDistance(LAT, LON, lats[i], lons[i], DistanceUnit.KILOMETERS));
+        }
+    }
+
+    @Benchmark
+    public double[] haversineBatch() {
+        DistanceCalculator.distances(LAT, LON, lats, lons, distances, DistanceUnit.KILOMETERS);
+        return distances;
+    }
+
+    @Benchmark
+    public double[] equirectangularBatch() {
+        DistanceCalculator.fastDistances(LAT, LON, lats, lons, distances, DistanceUnit.KILOMETERS);
+        return distances;
+    }
+
+    /**
+     * The distance as it was computed before
+     */
+    private static double lawOfCosines(double lat1, double lon1, double lat2, double lon2, String unit) {
+        if ((lat1 == lat2) && (lon1 == lon2)) {
+            return 0;
+        }
+        double theta = lon1 - lon2;
+        double dist = Math.sin(Math.toRadians(lat1)) * Math.sin(Math.toRadians(lat2)) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.cos(Math.toRadians(theta));
+        dist = Math.acos(dist);
+        dist = Math.toDegrees(dist);
+        dist = dist * 60 * 1.1515;
+        if (unit.equals("K")) {
+            dist = dist * 1.609344;
+        } else if (unit.equals("N")) {
+            dist = dist * 0.8684;
+        }
+        return dist;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DistanceCalculatorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
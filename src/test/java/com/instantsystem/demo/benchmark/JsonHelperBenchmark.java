@@ -0,0 +1,105 @@
+package com.instantsystem.demo.benchmark;
+
+import com.instantsystem.demo.helper.ResourceConverter;
+import com.instantsystem.demo.util.JsonHelper;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the extraction of the fields of the Poitiers records, field by field the way it was done before (the element
+ * is serialized and parsed again for each field, the id three times) and with the element parsed once and the paths
+ * compiled once.
+ * See the Benchmarks part of the README to run it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class JsonHelperBenchmark {
+
+    private JSONArray parkingList;
+
+    private JSONArray parkingPlaces;
+
+    @Setup
+    public void setup() throws JSONException {
+        parkingList = new JSONObject(ResourceConverter.convertResourceToString(new ClassPathResource("poitierParkingList.json"))).getJSONArray("records");
+        parkingPlaces = new JSONObject(ResourceConverter.convertResourceToString(new ClassPathResource("poitierParkingPlaces.json"))).getJSONArray("records");
+    }
+
+    @Benchmark
+    public void extractFieldByField(Blackhole blackhole) throws JSONException {
+        for (int i = 0; i < parkingList.length(); i++) {
+            JSONObject element = parkingList.getJSONObject(i);
+            blackhole.consume(readField(element, "fields.nom", String.class));
+            blackhole.consume(readField(element, "fields.nom", String.class));
+            blackhole.consume(readField(element, "fields.nom", String.class));
+            blackhole.consume(readField(element, "fields.nom", String.class));
+            blackhole.consume(readField(element, "fields.info", String.class));
+            blackhole.consume(readField(element, "fields.ylat", Double.class));
+            blackhole.consume(readField(element, "fields.xlong", Double.class));
+        }
+        for (int i = 0; i < parkingPlaces.length(); i++) {
+            JSONObject element = parkingPlaces.getJSONObject(i);
+            blackhole.consume(readField(element, "fields.nom", String.class));
+            blackhole.consume(readField(element, "fields.nom", String.class));
+            blackhole.consume(readField(element, "fields.nom", String.class));
+            blackhole.consume(readField(element, "fields.nom", String.class));
+            blackhole.consume(readField(element, "fields.capacite", Integer.class));
+            blackhole.consume(readField(element, "fields.places_restantes", Integer.class));
+        }
+    }
+
+    @Benchmark
+    public void extractParsedOnce(Blackhole blackhole) throws JSONException {
+        JsonPath name = JsonHelper.compilePath("fields.nom");
+        JsonPath info = JsonHelper.compilePath("fields.info");
+        JsonPath latitude = JsonHelper.compilePath("fields.ylat");
+        JsonPath longitude = JsonHelper.compilePath("fields.xlong");
+        JsonPath capacity = JsonHelper.compilePath("fields.capacite");
+        JsonPath remaining = JsonHelper.compilePath("fields.places_restantes");
+        for (int i = 0; i < parkingList.length(); i++) {
+            DocumentContext element = JsonHelper.parse(parkingList.getJSONObject(i));
+            blackhole.consume(JsonHelper.extractStringValueFromJson(element, name));
+            blackhole.consume(JsonHelper.extractStringValueFromJson(element, name));
+            blackhole.consume(JsonHelper.extractStringValueFromJson(element, info));
+            blackhole.consume(JsonHelper.extractDoubleValueFromJson(element, latitude));
+            blackhole.consume(JsonHelper.extractDoubleValueFromJson(element, longitude));
+        }
+        for (int i = 0; i < parkingPlaces.length(); i++) {
+            DocumentContext element = JsonHelper.parse(parkingPlaces.getJSONObject(i));
+            blackhole.consume(JsonHelper.extractStringValueFromJson(element, name));
+            blackhole.consume(JsonHelper.extractStringValueFromJson(element, name));
+            blackhole.consume(JsonHelper.extractIntegerValueFromJson(element, capacity));
+            blackhole.consume(JsonHelper.extractIntegerValueFromJson(element, remaining));
+        }
+    }
+
+    /**
+     * The extraction as it was done before, serialize and parse the element and compile the path for a single field
+     */
+    private static Object readField(JSONObject element, String path, Class<?> aClass) {
+        return JsonPath.parse(element.toString()).read("$." + path, aClass);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonHelperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
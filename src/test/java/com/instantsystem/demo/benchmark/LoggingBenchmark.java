@@ -0,0 +1,146 @@
+package com.instantsystem.demo.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.instantsystem.demo.helper.SyntheticCity;
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.service.ParkingService;
+import com.instantsystem.demo.parking.service.ParkingSnapshotService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the cost of the logs of a range request on a generated city, written to a file with the Spring Boot
+ * pattern by a synchronous or an async appender: the logs as they were (the request logged by the controller and the
+ * service, then one INFO line per parking checked), against the real {@link ParkingService} logging one summary line
+ * per request. Both answer with the same range search of the spatial index, only the logs differ.
+ * See the Benchmarks part of the README to run it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class LoggingBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingService.class.getName());
+
+    private static final String PATTERN = "%d{yyyy-MM-dd HH:mm:ss.SSS} %5level ${PID:- } --- [%15.15thread] %-40.40logger{39} : %msg%n";
+
+    @Param({"100", "1000"})
+    private int count;
+
+    @Param({"sync", "async"})
+    private String appender;
+
+    private SyntheticCity city;
+
+    private ParkingSnapshot snapshot;
+
+    private ParkingService parkingService;
+
+    private File logFile;
+
+    private Appender<ILoggingEvent> fileAppender;
+
+    @Setup
+    public void setup() throws IOException {
+        city = SyntheticCity.aroundPoitiers(count);
+        snapshot = new ParkingSnapshot(city.getName(), city.parkings(), Instant.now());
+        ParkingSnapshotService inMemorySnapshots = new ParkingSnapshotService(null, null, null, new SimpleMeterRegistry()) {
+            @Override
+            public Mono<ParkingSnapshot> buildAsyncSnapshot(String city, ParkingSnapshot previous) {
+                return Mono.just(snapshot);
+            }
+        };
+        ParkingSnapshotCache cache = new ParkingSnapshotCache(inMemorySnapshots, Duration.ofHours(1), Duration.ofHours(1), 1_000_000, 1, new SimpleMeterRegistry());
+        parkingService = new ParkingService(cache, null, null, 20, 100, 5, new SimpleMeterRegistry());
+        parkingService.getAsyncParkings(city.getName(), null, null, null, null, 0, null).block();
+
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        logFile = Files.createTempFile("logging-benchmark", ".log").toFile();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+        FileAppender<ILoggingEvent> file = new FileAppender<>();
+        file.setContext(context);
+        file.setName("FILE");
+        file.setFile(logFile.getAbsolutePath());
+        file.setEncoder(encoder);
+        file.start();
+        fileAppender = file;
+        if ("async".equals(appender)) {
+            // Same settings as logback-spring.xml
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setName("ASYNC_FILE");
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(file);
+            async.start();
+            fileAppender = async;
+        }
+        ch.qos.logback.classic.Logger logger = context.getLogger("com.instantsystem");
+        logger.setLevel(Level.INFO);
+        logger.setAdditive(false);
+        logger.addAppender(fileAppender);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ch.qos.logback.classic.Logger logger = ((LoggerContext) LoggerFactory.getILoggerFactory()).getLogger("com.instantsystem");
+        logger.detachAppender(fileAppender);
+        fileAppender.stop();
+        logFile.delete();
+    }
+
+    @Benchmark
+    public List<Parking> perParkingLines() {
+        double lat = city.getLatitude();
+        double lon = city.getLongitude();
+        LOG.info("Retrieve parkings for city {}, in range {}, user's position lat : {}, lon : {}", city.getName(), 0.5, lat, lon);
+        LOG.info("Retrieve parkings in city {}, filter by range ({} kilometers) around the user position lat : {}, lon : {}", city.getName(), 0.5, lat, lon);
+        for (Parking parking : snapshot.getParkings()) {
+            LOG.info("Check if parking {} is under {} kilometers from user's position lat: {}, lon : {}", parking.getId(), 0.5, lat, lon);
+        }
+        return snapshot.getSpatialIndex().findInRange(lat, lon, 0.5);
+    }
+
+    @Benchmark
+    public List<Parking> summaryLine() {
+        return parkingService.getAsyncParkings(city.getName(), city.getLatitude(), city.getLongitude(), 0.5, null, 0, null)
+                .block().getValue().getParkings();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoggingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,117 @@
+package com.instantsystem.demo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instantsystem.demo.helper.ResourceConverter;
+import com.instantsystem.demo.helper.SyntheticCity;
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import com.instantsystem.demo.parking.mapper.ParkingExtractionPlan;
+import com.instantsystem.demo.parking.mapper.ParkingMappingEngine;
+import com.instantsystem.demo.parking.service.ParkingSnapshotService;
+import com.instantsystem.demo.util.HttpValidators;
+import com.instantsystem.demo.util.UpstreamResponse;
+import com.instantsystem.demo.util.WebClientManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the conversion of the responses of a city to its parkings: the extraction of the fields of each response
+ * alone, and the full build of the snapshot (extraction, merge of both responses with buildParkingMap, spatial index
+ * and version). The dataset is the Poitiers responses of the test resources or a generated city of the given size,
+ * the endpoints answer right away from memory.
+ * See the Benchmarks part of the README to run it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class ParkingMappingBenchmark {
+
+    private static final String LIST_URL = "http://benchmark/list";
+
+    private static final String PLACES_URL = "http://benchmark/places";
+
+    @Param({"poitiers", "1000", "10000"})
+    private String dataset;
+
+    private ParkingMappingEngine engine;
+
+    private ParkingSnapshotService snapshotService;
+
+    private ParkingManager parkingManager;
+
+    private byte[] listBody;
+
+    private byte[] placesBody;
+
+    private ParkingExtractionPlan listPlan;
+
+    private ParkingExtractionPlan placesPlan;
+
+    @Setup
+    public void setup() {
+        SyntheticCity city = SyntheticCity.aroundPoitiers("poitiers".equals(dataset) ? 0 : Integer.parseInt(dataset));
+        if ("poitiers".equals(dataset)) {
+            listBody = ResourceConverter.convertResourceToString(new ClassPathResource("poitierParkingList.json")).getBytes(StandardCharsets.UTF_8);
+            placesBody = ResourceConverter.convertResourceToString(new ClassPathResource("poitierParkingPlaces.json")).getBytes(StandardCharsets.UTF_8);
+        } else {
+            listBody = city.listBody().getBytes(StandardCharsets.UTF_8);
+            placesBody = city.placesBody().getBytes(StandardCharsets.UTF_8);
+        }
+        parkingManager = city.parkingManager(LIST_URL, PLACES_URL);
+        engine = new ParkingMappingEngine(new ObjectMapper());
+        listPlan = engine.getPlan(parkingManager.getRequestsData().get(0).getiSMapper());
+        placesPlan = engine.getPlan(parkingManager.getRequestsData().get(1).getiSMapper());
+
+        Map<String, byte[]> bodies = new HashMap<>();
+        bodies.put(LIST_URL, listBody);
+        bodies.put(PLACES_URL, placesBody);
+        WebClientManager inMemoryEndpoints = new WebClientManager(null, 5, Duration.ofSeconds(30), 20, new SimpleMeterRegistry()) {
+            @Override
+            public Mono<UpstreamResponse> makeAsyncConditionalHttpCall(String url, String httpMethod, String city, HttpValidators validators, Duration timeout) {
+                byte[] body = bodies.get(url);
+                return Mono.just(new UpstreamResponse(body, new HttpValidators(null, null, body.length), false));
+            }
+        };
+        snapshotService = new ParkingSnapshotService(null, inMemoryEndpoints, engine, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public List<Parking> extractList() throws IOException {
+        return engine.map(listBody, listPlan);
+    }
+
+    @Benchmark
+    public List<Parking> extractPlaces() throws IOException {
+        return engine.map(placesBody, placesPlan);
+    }
+
+    @Benchmark
+    public ParkingSnapshot buildSnapshot() {
+        return snapshotService.buildSnapshot(parkingManager, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ParkingMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
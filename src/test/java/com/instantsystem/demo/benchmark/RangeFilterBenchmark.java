@@ -0,0 +1,83 @@
+package com.instantsystem.demo.benchmark;
+
+import com.instantsystem.demo.helper.SyntheticCity;
+import com.instantsystem.demo.parking.entity.NearbyParking;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.index.ParkingSpatialIndex;
+import com.instantsystem.demo.util.DistanceCalculator;
+import com.instantsystem.demo.util.DistanceUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the range filtering of the parkings of a generated city (spread up to 10 km around its center): the scan of
+ * all the parkings computing each distance as it was done before, the range search of the spatial index, and the
+ * search of the 10 nearest parkings.
+ * See the Benchmarks part of the README to run it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class RangeFilterBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int count;
+
+    @Param({"0.5", "2"})
+    private double range;
+
+    private double lat;
+
+    private double lon;
+
+    private List<Parking> parkings;
+
+    private ParkingSpatialIndex spatialIndex;
+
+    @Setup
+    public void setup() {
+        SyntheticCity city = SyntheticCity.aroundPoitiers(count);
+        lat = city.getLatitude();
+        lon = city.getLongitude();
+        parkings = city.parkings();
+        spatialIndex = new ParkingSpatialIndex(parkings);
+    }
+
+    @Benchmark
+    public List<Parking> linearScan() {
+        List<Parking> inRange = new ArrayList<>();
+        for (Parking parking : parkings) {
+            if (DistanceCalculator.distance(lat, lon, parking.getPosition().getLatitude(), parking.getPosition().getLongitude(), DistanceUnit.KILOMETERS) <= range) {
+                inRange.add(parking);
+            }
+        }
+        return inRange;
+    }
+
+    @Benchmark
+    public List<Parking> spatialIndex() {
+        return spatialIndex.findInRange(lat, lon, range);
+    }
+
+    @Benchmark
+    public List<NearbyParking> nearest() {
+        return spatialIndex.findNearest(lat, lon, 10, parking -> true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RangeFilterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
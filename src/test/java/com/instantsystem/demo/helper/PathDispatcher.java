@@ -0,0 +1,36 @@
+package com.instantsystem.demo.helper;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link Dispatcher} serving the enqueued responses by request path, since the endpoints of a city are called at the
+ * same time the order of arrival of the requests on the mock web server is not guaranteed.
+ * A request on a path with no response left is never answered, as the default queue dispatcher would do.
+ */
+public class PathDispatcher extends Dispatcher {
+
+    private final Map<String, Queue<MockResponse>> responses = new ConcurrentHashMap<>();
+
+    public void enqueue(String path, MockResponse response) {
+        responses.computeIfAbsent(path, p -> new ConcurrentLinkedQueue<>()).add(response);
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        Queue<MockResponse> queue = responses.get(request.getPath());
+        MockResponse response = queue == null ? null : queue.poll();
+        if (response == null) {
+            response = new MockResponse();
+            response.socketPolicy(SocketPolicy.NO_RESPONSE);
+        }
+        return response;
+    }
+}
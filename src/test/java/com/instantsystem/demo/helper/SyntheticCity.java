@@ -0,0 +1,151 @@
+package com.instantsystem.demo.helper;
+
+import com.instantsystem.demo.parking.entity.ISFields;
+import com.instantsystem.demo.parking.entity.ISMapper;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import com.instantsystem.demo.parking.entity.Position;
+import com.instantsystem.demo.parking.entity.RequestData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generate a city of any size with the same shape as Poitiers: a list endpoint giving the name, description and
+ * position of the parkings and a places endpoint giving their capacity and remaining places, both matched by name.
+ * The parkings are spread up to 10 km around the center of the city, a same seed gives the same city
+ */
+public class SyntheticCity {
+
+    private final String name;
+
+    private final double latitude;
+
+    private final double longitude;
+
+    private final int parkingCount;
+
+    private final long seed;
+
+    public SyntheticCity(String name, double latitude, double longitude, int parkingCount, long seed) {
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.parkingCount = parkingCount;
+        this.seed = seed;
+    }
+
+    /**
+     * A city of the given size around Poitiers
+     */
+    public static SyntheticCity aroundPoitiers(int parkingCount) {
+        return new SyntheticCity("Poitier", 46.58595805, 0.35129543, parkingCount, 42);
+    }
+
+    /**
+     * Generate cities spread over France, each with a random number of parkings
+     * @param count         The number of cities
+     * @param minParkings   The minimal number of parkings of a city
+     * @param maxParkings   The maximal number of parkings of a city
+     * @param seed          The seed of the generation, the same seed gives the same cities
+     * @return  The cities, named Synthetic-1, Synthetic-2...
+     */
+    public static List<SyntheticCity> generate(int count, int minParkings, int maxParkings, long seed) {
+        Random random = new Random(seed);
+        List<SyntheticCity> cities = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            int parkingCount = minParkings + random.nextInt(maxParkings - minParkings + 1);
+            cities.add(new SyntheticCity("Synthetic-" + i, 43 + random.nextDouble() * 6, -1 + random.nextDouble() * 8, parkingCount, random.nextLong()));
+        }
+        return cities;
+    }
+
+    /**
+     * @return  The body of the list endpoint, records with the fields nom, info, ylat and xlong
+     */
+    public String listBody() {
+        Random random = new Random(seed);
+        StringBuilder body = new StringBuilder(parkingCount * 160).append("{\"nhits\": ").append(parkingCount).append(", \"records\": [");
+        for (int i = 0; i < parkingCount; i++) {
+            double lat = latitude + (random.nextDouble() - 0.5) * 0.18;
+            double lon = longitude + (random.nextDouble() - 0.5) * 0.26;
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"recordid\": \"").append(name).append('-').append(i).append("\", \"fields\": {")
+                    .append("\"nom\": \"").append(parkingName(i)).append("\", ")
+                    .append("\"info\": \"Stationnement longue duree - parking ").append(i).append("\", ")
+                    .append("\"ylat\": ").append(String.format(Locale.ROOT, "%.8f", lat)).append(", ")
+                    .append("\"xlong\": ").append(String.format(Locale.ROOT, "%.8f", lon)).append("}}");
+        }
+        return body.append("]}").toString();
+    }
+
+    /**
+     * @return  The body of the places endpoint, records with the fields nom, capacite and places_restantes
+     */
+    public String placesBody() {
+        Random random = new Random(seed + 1);
+        StringBuilder body = new StringBuilder(parkingCount * 120).append("{\"nhits\": ").append(parkingCount).append(", \"records\": [");
+        for (int i = 0; i < parkingCount; i++) {
+            int capacity = 50 + random.nextInt(950);
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"recordid\": \"").append(name).append("-places-").append(i).append("\", \"fields\": {")
+                    .append("\"nom\": \"").append(parkingName(i)).append("\", ")
+                    .append("\"capacite\": ").append(capacity).append(".0, ")
+                    .append("\"places_restantes\": ").append(random.nextInt(capacity + 1)).append(".0}}");
+        }
+        return body.append("]}").toString();
+    }
+
+    /**
+     * @return  The {@link Parking} of the city as built from both endpoints, without going through the mapping
+     */
+    public List<Parking> parkings() {
+        Random positions = new Random(seed);
+        Random places = new Random(seed + 1);
+        List<Parking> parkings = new ArrayList<>(parkingCount);
+        for (int i = 0; i < parkingCount; i++) {
+            double lat = latitude + (positions.nextDouble() - 0.5) * 0.18;
+            double lon = longitude + (positions.nextDouble() - 0.5) * 0.26;
+            int capacity = 50 + places.nextInt(950);
+            parkings.add(new Parking(parkingName(i), parkingName(i), name, capacity, places.nextInt(capacity + 1),
+                    "Stationnement longue duree - parking " + i, new Position(lat, lon)));
+        }
+        return parkings;
+    }
+
+    /**
+     * The {@link ParkingManager} of the city, mapped the same way as Poitiers
+     * @param listUrl   The URL serving {@link #listBody()}
+     * @param placesUrl The URL serving {@link #placesBody()}
+     */
+    public ParkingManager parkingManager(String listUrl, String placesUrl) {
+        ISFields listFields = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
+        ISFields placesFields = new ISFields("fields.nom", "fields.nom", null, "fields.capacite", "fields.places_restantes", null, null, null);
+        List<RequestData> requestsData = new ArrayList<>();
+        requestsData.add(new RequestData("get", listUrl, null, new ISMapper("JSONObject", "records", listFields)));
+        requestsData.add(new RequestData("get", placesUrl, null, new ISMapper("JSONObject", "records", placesFields)));
+        return new ParkingManager(name, requestsData);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public int getParkingCount() {
+        return parkingCount;
+    }
+
+    private static String parkingName(int i) {
+        return "PARKING " + i;
+    }
+}
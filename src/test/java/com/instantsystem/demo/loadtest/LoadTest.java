@@ -0,0 +1,237 @@
+package com.instantsystem.demo.loadtest;
+
+import com.instantsystem.demo.InstantSystemDemoApplication;
+import com.instantsystem.demo.helper.SyntheticCity;
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import com.instantsystem.demo.parking.repository.ParkingManagerRepository;
+import okhttp3.mockwebserver.MockWebServer;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the parking endpoints. The endpoints of generated cities are simulated by a mock web server (see
+ * {@link SimulatedFeeds}), the application is started on a random port with a dedicated MongoDB database, then the
+ * /parkings endpoints (all the parkings of a city, in range of a position, nearest parkings) of random cities are
+ * called at a fixed rate. The requests are sent at their planned time whether the previous ones answered or not, their
+ * latency is measured from that time so a slow server is not hidden by fewer requests sent.
+ * Configured with system properties, see the Load test part of the README to run it
+ */
+public class LoadTest {
+
+    private final int rps;
+
+    private final List<SyntheticCity> cities;
+
+    private final HttpClient client;
+
+    private final String baseUrl;
+
+    private final Random random;
+
+    private final Recorder recorder = new Recorder(3);
+
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private volatile long lastCompletion;
+
+    LoadTest(int rps, List<SyntheticCity> cities, HttpClient client, String baseUrl, long seed) {
+        this.rps = rps;
+        this.cities = cities;
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cityCount = Integer.getInteger("loadtest.cities", 200);
+        int minParkings = Integer.getInteger("loadtest.min-parkings", 20);
+        int maxParkings = Integer.getInteger("loadtest.max-parkings", 500);
+        int rps = Integer.getInteger("loadtest.rps", 200);
+        Duration warmup = duration("loadtest.warmup", "15s");
+        Duration duration = duration("loadtest.duration", "60s");
+        Duration latency = duration("loadtest.latency", "50ms");
+        Duration jitter = duration("loadtest.jitter", "20ms");
+        double errorRate = Double.parseDouble(System.getProperty("loadtest.error-rate", "0.01"));
+        int padding = Integer.getInteger("loadtest.payload-padding", 0);
+        long seed = Long.getLong("loadtest.seed", 42);
+        int hosts = Integer.getInteger("loadtest.hosts", 10);
+
+        List<SyntheticCity> cities = SyntheticCity.generate(cityCount, minParkings, maxParkings, seed);
+        SimulatedFeeds feeds = new SimulatedFeeds(latency, jitter, errorRate, padding);
+        cities.forEach(feeds::addCity);
+        MockWebServer upstream = new MockWebServer();
+        upstream.setDispatcher(feeds);
+        // Listen on all the loopback addresses, the cities are spread over 127.0.0.1 to 127.0.0.<hosts> as if they were
+        // different hosts (the bulkheads and connection pools are per host)
+        upstream.start(InetAddress.getByName("0.0.0.0"), 0);
+
+        // Devtools would restart the application, and this main method with it
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(InstantSystemDemoApplication.class).run(
+                "--server.port=0",
+                "--spring.data.mongodb.database=" + System.getProperty("loadtest.database", "InstantSystemDemoLoadTest"),
+                "--parking.polling.enabled=" + System.getProperty("loadtest.polling", "false"),
+                "--logging.level.com.instantsystem=" + System.getProperty("loadtest.log-level", "WARN"));
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        try {
+            ParkingManagerRepository repository = context.getBean(ParkingManagerRepository.class);
+            repository.deleteAll();
+            List<ParkingManager> managers = new ArrayList<>(cities.size());
+            for (int i = 0; i < cities.size(); i++) {
+                SyntheticCity city = cities.get(i);
+                String host = String.format("http://127.0.0.%d:%d", 1 + i % hosts, upstream.getPort());
+                managers.add(city.parkingManager(host + SimulatedFeeds.listPath(city), host + SimulatedFeeds.placesPath(city)));
+            }
+            repository.saveAll(managers);
+
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(clientExecutor)
+                    .build();
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            LoadTest loadTest = new LoadTest(rps, cities, client, baseUrl, seed);
+
+            System.out.printf(Locale.ROOT, "%nLoad test: %d cities (%d-%d parkings) on %d hosts, upstream latency %d ms +/- %d ms, error rate %.1f%%, padding %d B%n",
+                    cityCount, minParkings, maxParkings, hosts, latency.toMillis(), jitter.toMillis(), errorRate * 100, padding);
+            System.out.printf(Locale.ROOT, "Warm up %d s, then %d req/s during %d s%n", warmup.getSeconds(), rps, duration.getSeconds());
+            loadTest.run(warmup);
+            long upstreamCalls = feeds.getCallCount();
+            long upstreamErrors = feeds.getErrorCount();
+            long upstreamBytes = feeds.getBytesSent();
+            loadTest.reset();
+            long start = System.nanoTime();
+            long sent = loadTest.run(duration);
+            loadTest.report(sent, start);
+            System.out.printf(Locale.ROOT, "Upstream   %d calls, %d simulated errors, %.1f MB sent%n%n",
+                    feeds.getCallCount() - upstreamCalls, feeds.getErrorCount() - upstreamErrors, (feeds.getBytesSent() - upstreamBytes) / 1e6);
+
+            repository.deleteAll();
+        } finally {
+            context.close();
+            upstream.shutdown();
+            clientExecutor.shutdownNow();
+        }
+        // Some client threads started by the application are not daemon threads, the JVM would not stop without it
+        System.exit(0);
+    }
+
+    /**
+     * Send requests at the target rate during a duration, then wait for the requests still running
+     * @return  The number of requests sent
+     */
+    long run(Duration duration) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rps;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long sent = 0;
+        for (long planned = start; planned < end; planned += interval) {
+            long wait = planned - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(nextRequest(sent), planned);
+            sent++;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return sent;
+    }
+
+    private void send(HttpRequest request, long planned) {
+        inFlight.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+            long now = System.nanoTime();
+            recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(now - planned));
+            if (e != null) {
+                failures.increment();
+            } else {
+                statuses.computeIfAbsent(response.statusCode(), s -> new LongAdder()).increment();
+                if (response.statusCode() >= 400) {
+                    failures.increment();
+                }
+            }
+            completed.increment();
+            lastCompletion = now;
+            inFlight.decrementAndGet();
+        });
+    }
+
+    /**
+     * The requests alternate between all the parkings of a city, the parkings in 1 km of a position and the 5 nearest
+     * parkings of a position, on a random city
+     */
+    private HttpRequest nextRequest(long index) {
+        SyntheticCity city = cities.get(random.nextInt(cities.size()));
+        double lat = city.getLatitude() + (random.nextDouble() - 0.5) * 0.1;
+        double lon = city.getLongitude() + (random.nextDouble() - 0.5) * 0.1;
+        String path;
+        switch ((int) (index % 3)) {
+            case 0:
+                path = String.format(Locale.ROOT, "/parkings/city/%s", city.getName());
+                break;
+            case 1:
+                path = String.format(Locale.ROOT, "/parkings/city/%s?lat=%.6f&lon=%.6f&range=1", city.getName(), lat, lon);
+                break;
+            default:
+                path = String.format(Locale.ROOT, "/parkings/city/%s/nearest?lat=%.6f&lon=%.6f&k=5", city.getName(), lat, lon);
+        }
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private void reset() {
+        recorder.reset();
+        statuses.clear();
+        failures.reset();
+        completed.reset();
+    }
+
+    private void report(long sent, long start) {
+        Histogram histogram = recorder.getIntervalHistogram();
+        double seconds = (lastCompletion - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Requests   %d sent, %d completed, %d failed, throughput %.1f req/s%n",
+                sent, completed.sum(), failures.sum(), completed.sum() / seconds);
+        System.out.printf(Locale.ROOT, "Latency    p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms%n",
+                histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(90) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                histogram.getMaxValue() / 1e3);
+        Map<Integer, Long> byStatus = new TreeMap<>();
+        statuses.forEach((status, count) -> byStatus.put(status, count.sum()));
+        System.out.printf("Statuses   %s%n", byStatus);
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+}
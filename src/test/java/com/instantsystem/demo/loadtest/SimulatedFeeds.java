@@ -0,0 +1,101 @@
+package com.instantsystem.demo.loadtest;
+
+import com.instantsystem.demo.helper.SyntheticCity;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Dispatcher} simulating the endpoints of many cities on one mock web server: /{city}/list and /{city}/places
+ * answer the responses of a {@link SyntheticCity}. Each response is delayed by the latency plus or minus a random
+ * jitter, a part of them fails with a 500 (error rate), and the responses can be padded with a field the mappers don't
+ * read to simulate larger payloads
+ */
+public class SimulatedFeeds extends Dispatcher {
+
+    private final Map<String, String> bodies = new ConcurrentHashMap<>();
+
+    private final long latencyMillis;
+
+    private final long jitterMillis;
+
+    private final double errorRate;
+
+    private final String padding;
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    public SimulatedFeeds(Duration latency, Duration jitter, double errorRate, int paddingBytes) {
+        this.latencyMillis = latency.toMillis();
+        this.jitterMillis = jitter.toMillis();
+        this.errorRate = errorRate;
+        StringBuilder padding = new StringBuilder(paddingBytes);
+        for (int i = 0; i < paddingBytes; i++) {
+            padding.append('x');
+        }
+        this.padding = padding.toString();
+    }
+
+    /**
+     * Serve the responses of a city
+     * @param city  The city, its endpoints are /{name}/list and /{name}/places
+     */
+    public void addCity(SyntheticCity city) {
+        bodies.put(listPath(city), pad(city.listBody()));
+        bodies.put(placesPath(city), pad(city.placesBody()));
+    }
+
+    public static String listPath(SyntheticCity city) {
+        return "/" + city.getName() + "/list";
+    }
+
+    public static String placesPath(SyntheticCity city) {
+        return "/" + city.getName() + "/places";
+    }
+
+    private String pad(String body) {
+        return padding.isEmpty() ? body : "{\"padding\": \"" + padding + "\", " + body.substring(1);
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        calls.increment();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = Math.max(0, latencyMillis + (jitterMillis == 0 ? 0 : random.nextLong(-jitterMillis, jitterMillis + 1)));
+        String body = bodies.get(request.getPath());
+        MockResponse response;
+        if (body == null) {
+            response = new MockResponse().setResponseCode(404);
+        } else if (random.nextDouble() < errorRate) {
+            errors.increment();
+            response = new MockResponse().setResponseCode(500).setBody("{\"error\": \"simulated failure\"}");
+        } else {
+            bytesSent.add(body.length());
+            response = new MockResponse().setResponseCode(200).setHeader("Content-Type", "application/json").setBody(body);
+        }
+        return response.setHeadersDelay(delay, TimeUnit.MILLISECONDS);
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+}
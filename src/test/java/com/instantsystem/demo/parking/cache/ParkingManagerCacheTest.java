@@ -0,0 +1,73 @@
+package com.instantsystem.demo.parking.cache;
+
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParkingManagerCacheTest {
+
+    private final ParkingManagerCache cache = new ParkingManagerCache(Duration.ofMinutes(10), 100, Duration.ofSeconds(30), 100, new SimpleMeterRegistry());
+
+    @Test
+    public void getAsync_duringLoad_shouldWaitForTheSameLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<ParkingManager> load = Sinks.one();
+        List<CompletableFuture<ParkingManager>> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(cache.getAsync("Poitier", city -> {
+                loads.incrementAndGet();
+                return load.asMono();
+            }).toFuture());
+        }
+        ParkingManager parkingManager = new ParkingManager("Poitier", Collections.emptyList());
+        load.tryEmitValue(parkingManager);
+        for (CompletableFuture<ParkingManager> request : requests) {
+            assertSame(request.get(1, TimeUnit.SECONDS), parkingManager);
+        }
+        assertEquals(loads.get(), 1);
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitCount(), 2);
+    }
+
+    @Test
+    public void getAsync_cancelledDuringLoad_shouldNotCancelTheLoad() throws Exception {
+        Sinks.One<ParkingManager> load = Sinks.one();
+        Disposable cancelled = cache.getAsync("Poitier", city -> load.asMono()).subscribe();
+        CompletableFuture<ParkingManager> request = cache.getAsync("Poitier", city -> Mono.empty()).toFuture();
+        cancelled.dispose();
+        ParkingManager parkingManager = new ParkingManager("Poitier", Collections.emptyList());
+        load.tryEmitValue(parkingManager);
+        assertSame(request.get(1, TimeUnit.SECONDS), parkingManager);
+    }
+
+    @Test
+    public void invalidate_duringLoad_shouldNotCacheTheLoad() throws Exception {
+        Sinks.One<ParkingManager> load = Sinks.one();
+        CompletableFuture<ParkingManager> request = cache.getAsync("Poitier", city -> load.asMono()).toFuture();
+        // The ParkingManager is deleted while it is being loaded
+        cache.invalidate("Poitier");
+        ParkingManager deleted = new ParkingManager("Poitier", Collections.emptyList());
+        load.tryEmitValue(deleted);
+        assertSame(request.get(1, TimeUnit.SECONDS), deleted);
+
+        AtomicInteger loads = new AtomicInteger();
+        assertNull(cache.getAsync("Poitier", city -> {
+            loads.incrementAndGet();
+            return Mono.empty();
+        }).block());
+        assertEquals(loads.get(), 1);
+    }
+}
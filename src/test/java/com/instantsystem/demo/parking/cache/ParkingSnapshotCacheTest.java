@@ -0,0 +1,213 @@
+package com.instantsystem.demo.parking.cache;
+
+import com.instantsystem.demo.parking.entity.Parking;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParkingSnapshotCacheTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void clean() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void get_twice_shouldBuildOnce() {
+        AtomicInteger builds = new AtomicInteger();
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            builds.incrementAndGet();
+            return new ParkingSnapshot(city, Collections.emptyList(), Instant.now());
+        }), Duration.ofMinutes(1), Duration.ofMinutes(15), 100, executor, new SimpleMeterRegistry());
+        ParkingSnapshot snapshot = cache.get("Poitier");
+        assertSame(snapshot, cache.get("Poitier"));
+        assertEquals(builds.get(), 1);
+    }
+
+    @Test
+    public void getAsync_duringBuild_shouldWaitForTheSameBuild() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch buildCanFinish = new CountDownLatch(1);
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            builds.incrementAndGet();
+            buildCanFinish.await();
+            return new ParkingSnapshot(city, Collections.emptyList(), Instant.now());
+        }), Duration.ofMinutes(1), Duration.ofMinutes(15), 100, executor, new SimpleMeterRegistry());
+        List<CompletableFuture<ParkingSnapshot>> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(cache.getAsync("Poitier").toFuture());
+        }
+        buildCanFinish.countDown();
+        ParkingSnapshot snapshot = requests.get(0).get(1, TimeUnit.SECONDS);
+        for (CompletableFuture<ParkingSnapshot> request : requests) {
+            assertSame(snapshot, request.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(builds.get(), 1);
+        assertEquals(cache.getCoalescedRequestCount(), 2);
+    }
+
+    @Test
+    public void getAsync_cancelledDuringBuild_shouldNotCancelTheBuild() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch buildCanFinish = new CountDownLatch(1);
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            builds.incrementAndGet();
+            buildCanFinish.await();
+            return new ParkingSnapshot(city, Collections.emptyList(), Instant.now());
+        }), Duration.ofMinutes(1), Duration.ofMinutes(15), 100, executor, new SimpleMeterRegistry());
+        cache.getAsync("Poitier").subscribe().dispose();
+        CompletableFuture<ParkingSnapshot> request = cache.getAsync("Poitier").toFuture();
+        buildCanFinish.countDown();
+        assertNotNull(request.get(1, TimeUnit.SECONDS));
+        assertEquals(builds.get(), 1);
+    }
+
+    @Test
+    public void get_afterRefreshDelay_shouldServeStaleWhileRebuilding() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch refreshCanFinish = new CountDownLatch(1);
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            if (builds.incrementAndGet() > 1) {
+                try {
+                    refreshCanFinish.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new ParkingSnapshot(city, Collections.emptyList(), Instant.now());
+        }), Duration.ofMillis(50), Duration.ofMinutes(15), 100, executor, new SimpleMeterRegistry());
+        ParkingSnapshot first = cache.get("Poitier");
+        Thread.sleep(100);
+
+        // The refresh is blocked, the stale snapshot is still returned right away
+        assertSame(first, CompletableFuture.supplyAsync(() -> cache.get("Poitier")).get(1, TimeUnit.SECONDS));
+
+        refreshCanFinish.countDown();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (cache.get("Poitier") == first && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotSame(first, cache.get("Poitier"));
+        assertEquals(builds.get(), 2);
+    }
+
+    @Test
+    public void get_afterRefreshDelay_shouldRebuildFromPreviousSnapshot() throws Exception {
+        List<ParkingSnapshot> previousSnapshots = new ArrayList<>();
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            previousSnapshots.add(previous);
+            return new ParkingSnapshot(city, Collections.emptyList(), Instant.now());
+        }), Duration.ofMillis(10), Duration.ofMinutes(15), 100, Runnable::run, new SimpleMeterRegistry());
+        ParkingSnapshot first = cache.get("Poitier");
+        Thread.sleep(50);
+        cache.get("Poitier");
+        assertEquals(previousSnapshots, Arrays.asList(null, first));
+    }
+
+    @Test
+    public void get_moreParkingsThanMax_shouldEvict() {
+        AtomicInteger builds = new AtomicInteger();
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            builds.incrementAndGet();
+            return new ParkingSnapshot(city, Arrays.asList(new Parking(), new Parking()), Instant.now());
+        }), Duration.ofMinutes(1), Duration.ofMinutes(15), 3, Runnable::run, new SimpleMeterRegistry());
+        cache.get("Poitier");
+        cache.get("Nantes");
+        cache.get("Poitier");
+        cache.get("Nantes");
+        // Both cities can't be in the cache at the same time
+        assertTrue(builds.get() > 2);
+    }
+
+    @Test
+    public void get_severalCities_shouldGaugeTheParkingsOfEach() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() ->
+                new ParkingSnapshot(city, city.equals("Poitier") ? Arrays.asList(new Parking(), new Parking()) : Collections.emptyList(), Instant.now())
+        ), Duration.ofMinutes(1), Duration.ofMinutes(15), 100, executor, meterRegistry);
+        cache.get("Poitier");
+        cache.get("Nantes");
+        cache.refreshAsync("Poitier").block();
+        assertEquals(meterRegistry.get("parking.city.parkings").gauges().size(), 2);
+        assertEquals(meterRegistry.get("parking.city.parkings").tag("city", "Poitier").gauge().value(), 2.0);
+        assertEquals(meterRegistry.get("parking.city.parkings").tag("city", "Nantes").gauge().value(), 0.0);
+
+        cache.invalidate("Nantes");
+        assertEquals(meterRegistry.get("parking.city.parkings").gauges().size(), 1);
+    }
+
+    @Test
+    public void get_failingBuild_shouldNotBeCached() {
+        AtomicInteger builds = new AtomicInteger();
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            builds.incrementAndGet();
+            throw new IllegalStateException("Upstream down");
+        }), Duration.ofMinutes(1), Duration.ofMinutes(15), 100, executor, new SimpleMeterRegistry());
+        assertThrows(IllegalStateException.class, () -> cache.get("Poitier"));
+        assertThrows(IllegalStateException.class, () -> cache.get("Poitier"));
+        assertEquals(builds.get(), 2);
+    }
+
+    @Test
+    public void refresh_duringRefresh_shouldBuildOnce() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch refreshCanFinish = new CountDownLatch(1);
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            if (builds.incrementAndGet() > 1) {
+                refreshCanFinish.await();
+            }
+            return new ParkingSnapshot(city, Collections.emptyList(), Instant.now());
+        }), Duration.ofMinutes(1), Duration.ofMinutes(15), 100, executor, new SimpleMeterRegistry());
+        ParkingSnapshot first = cache.get("Poitier");
+
+        // The polling and a stream refresh the city at the same time
+        CompletableFuture<ParkingSnapshot> poll = cache.refreshAsync("Poitier").toFuture();
+        cache.refresh("Poitier");
+        CompletableFuture<ParkingSnapshot> otherPoll = cache.refreshAsync("Poitier").toFuture();
+        assertSame(first, cache.get("Poitier"));
+
+        refreshCanFinish.countDown();
+        ParkingSnapshot refreshed = poll.get(1, TimeUnit.SECONDS);
+        assertSame(refreshed, otherPoll.get(1, TimeUnit.SECONDS));
+        assertSame(refreshed, cache.get("Poitier"));
+        assertEquals(builds.get(), 2);
+    }
+
+    @Test
+    public void invalidate_duringRefresh_shouldDropTheSnapshot() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch refreshCanFinish = new CountDownLatch(1);
+        ParkingSnapshotCache cache = new ParkingSnapshotCache((city, previous) -> Mono.fromCallable(() -> {
+            if (builds.incrementAndGet() > 1) {
+                refreshCanFinish.await();
+            }
+            return new ParkingSnapshot(city, Collections.emptyList(), Instant.now());
+        }), Duration.ofMinutes(1), Duration.ofMinutes(15), 100, executor, new SimpleMeterRegistry());
+        cache.get("Poitier");
+        List<ParkingSnapshot> published = new CopyOnWriteArrayList<>();
+        cache.getUpdates().subscribe(published::add);
+
+        // The ParkingManager of the city changes while it is refreshed
+        CompletableFuture<ParkingSnapshot> poll = cache.refreshAsync("Poitier").toFuture();
+        cache.invalidate("Poitier");
+        refreshCanFinish.countDown();
+        poll.get(1, TimeUnit.SECONDS);
+
+        assertNull(cache.getIfPresent("Poitier"));
+        assertTrue(published.isEmpty());
+    }
+}
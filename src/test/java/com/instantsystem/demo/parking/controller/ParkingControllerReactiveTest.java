@@ -0,0 +1,153 @@
+package com.instantsystem.demo.parking.controller;
+
+import com.instantsystem.demo.helper.PathDispatcher;
+import com.instantsystem.demo.helper.ResourceConverter;
+import com.instantsystem.demo.parking.cache.ParkingManagerCache;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
+import com.instantsystem.demo.parking.entity.*;
+import com.instantsystem.demo.parking.repository.ParkingManagerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.netty.NettyWebServer;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The same endpoints served by WebFlux on Netty, as when the application runs with
+ * spring.main.web-application-type=reactive
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.main.web-application-type=reactive", "parking.polling.enabled=false"})
+class ParkingControllerReactiveTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ParkingManagerRepository parkingManagerRepository;
+
+    @Autowired
+    private ParkingManagerCache parkingManagerCache;
+
+    @Autowired
+    private ParkingSnapshotCache parkingSnapshotCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ReactiveWebServerApplicationContext applicationContext;
+
+    @Value("classpath:poitierParkingList.json")
+    private Resource poitierParkingList;
+
+    @Value("classpath:poitierParkingPlaces.json")
+    private Resource poitierParkingPlaces;
+
+    private MockWebServer mockWebServer;
+
+    private PathDispatcher dispatcher;
+
+    @BeforeEach
+    void initialize() throws IOException {
+        mockWebServer = new MockWebServer();
+        dispatcher = new PathDispatcher();
+        mockWebServer.setDispatcher(dispatcher);
+        mockWebServer.start();
+        String baseUrl = String.format("http://localhost:%s", mockWebServer.getPort());
+
+        parkingManagerRepository.deleteAll();
+        parkingManagerCache.invalidateAll();
+        parkingSnapshotCache.invalidateAll();
+
+        ISFields isFields1 = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
+        ISFields isFields2 = new ISFields("fields.nom", "fields.nom", null, "fields.capacite", "fields.places_restantes", null, null, null);
+        List<RequestData> requestsData = new ArrayList<>();
+        requestsData.add(new RequestData("get", baseUrl + "/list", null, new ISMapper("JSONObject", "records", isFields1)));
+        requestsData.add(new RequestData("get", baseUrl + "/places", null, new ISMapper("JSONObject", "records", isFields2)));
+        parkingManagerRepository.insert(new ParkingManager("Poitier", requestsData));
+    }
+
+    @AfterEach
+    void clean() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void getParkings_reactive_shouldSucceed() throws Exception {
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(ResourceConverter.convertResourceToString(poitierParkingList)));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(ResourceConverter.convertResourceToString(poitierParkingPlaces)));
+
+        List<Parking> parkings = webTestClient.get().uri("/parkings/city/Poitier")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Parking.class)
+                .returnResult().getResponseBody();
+        assertEquals(parkings.size(), 28);
+        assertEquals(parkings.get(0).getName(), "GRAND CERF");
+        assertTrue(meterRegistry.get("parking.serialization").timer().count() > 0);
+
+        // Served from the snapshot built by the previous request
+        webTestClient.get().uri("/parkings/city/Poitier/name/UNKNOWN")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        String eTag = webTestClient.get().uri("/parkings/city/Poitier?lat=46.58595805&lon=0.35129543&range=0.001")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Parking.class)
+                .getResponseHeaders().getETag();
+        webTestClient.get().uri("/parkings/city/Poitier?lat=46.58595805&lon=0.35129543&range=0.001")
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    public void streamParkings_reactive_shouldStartWithSnapshot() throws Exception {
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(ResourceConverter.convertResourceToString(poitierParkingList)));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(ResourceConverter.convertResourceToString(poitierParkingPlaces)));
+
+        ParkingUpdate update = webTestClient.get().uri("/parkings/city/Poitier/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(ParkingUpdate.class)
+                .getResponseBody()
+                .blockFirst(Duration.ofSeconds(10));
+        assertEquals(update.getType(), ParkingUpdate.Type.SNAPSHOT);
+        assertEquals(update.getParkings().size(), 28);
+    }
+
+    @Test
+    public void webServer_reactive_shouldBeNetty() {
+        // Tomcat is on the classpath too, Spring Boot would prefer it
+        assertTrue(applicationContext.getWebServer() instanceof NettyWebServer);
+    }
+
+    @Test
+    public void getParkings_reactive_unknownCity_shouldFail() {
+        webTestClient.get().uri("/parkings/city/Nowhere")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
@@ -1,12 +1,21 @@
 package com.instantsystem.demo.parking.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.instantsystem.demo.exception.RestCallException;
 import com.instantsystem.demo.exception.UnexpectedHttpMethodException;
+import com.instantsystem.demo.helper.PathDispatcher;
 import com.instantsystem.demo.helper.ResourceConverter;
+import com.instantsystem.demo.parking.cache.ParkingFeed;
+import com.instantsystem.demo.parking.cache.ParkingManagerCache;
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
 import com.instantsystem.demo.parking.entity.*;
 import com.instantsystem.demo.parking.exception.BuildParkingException;
 import com.instantsystem.demo.parking.exception.InstantSystemMapperException;
+import com.instantsystem.demo.parking.exception.InvalidParkingQueryException;
+import com.instantsystem.demo.parking.exception.TooManyCitiesException;
+import com.instantsystem.demo.parking.index.CityBoundsIndex;
 import com.instantsystem.demo.parking.repository.ParkingManagerRepository;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -15,26 +24,36 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+@SpringBootTest(properties = "parking.polling.enabled=false")
 @AutoConfigureMockMvc
+@AutoConfigureMetrics
 class ParkingControllerTest {
 
     @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
@@ -44,6 +63,15 @@ class ParkingControllerTest {
     @Autowired
     private ParkingManagerRepository parkingManagerRepository;
 
+    @Autowired
+    private ParkingManagerCache parkingManagerCache;
+
+    @Autowired
+    private ParkingSnapshotCache parkingSnapshotCache;
+
+    @Autowired
+    private CityBoundsIndex cityBoundsIndex;
+
     @Value("classpath:poitierParkingList.json")
     private Resource poitierParkingList;
 
@@ -58,6 +86,8 @@ class ParkingControllerTest {
 
     private MockWebServer mockWebServer;
 
+    private PathDispatcher dispatcher;
+
     private ParkingManager manager;
 
     private String baseUrl;
@@ -68,11 +98,16 @@ class ParkingControllerTest {
     void initialize() throws IOException {
         // Set up the mock web server
         mockWebServer = new MockWebServer();
+        dispatcher = new PathDispatcher();
+        mockWebServer.setDispatcher(dispatcher);
         mockWebServer.start();
         baseUrl = String.format("http://localhost:%s", mockWebServer.getPort());
 
-        // Clean DB just in case
+        // Clean DB and cache just in case
         parkingManagerRepository.deleteAll();
+        parkingManagerCache.invalidateAll();
+        parkingSnapshotCache.invalidateAll();
+        cityBoundsIndex.invalidateAll();
 
         // Populate DB
         ISFields isFields1 = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
@@ -81,8 +116,8 @@ class ParkingControllerTest {
         ISMapper isMapper1 = new ISMapper("JSONObject", "records", isFields1);
         ISMapper isMapper2 = new ISMapper("JSONObject", "records", isFields2);
 
-        RequestData requestData1 = new RequestData("get", baseUrl, null, isMapper1);
-        RequestData requestData2 = new RequestData("get", baseUrl, null, isMapper2);
+        RequestData requestData1 = new RequestData("get", baseUrl + "/list", null, isMapper1);
+        RequestData requestData2 = new RequestData("get", baseUrl + "/places", null, isMapper2);
 
         List<RequestData> requestsData = new ArrayList<>();
         requestsData.add(requestData1);
@@ -98,18 +133,28 @@ class ParkingControllerTest {
         mockWebServer.shutdown();
     }
 
+    /**
+     * The endpoints return a Mono or a Flux, the response is written once it completes in an async dispatch
+     */
+    private ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+        MvcResult asyncResult = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(asyncResult));
+    }
+
     @Test
     public void getParkings_noRange_shouldSucceed() throws Exception {
         // Mock Http call to distant URL
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
 
         // Prepare compare object
         Parking parking = new Parking("GRAND CERF", "GRAND CERF", "Poitier", null, null, "Stationnement longue durée (Zone violet) - Pour les horaires 12H maximum application du FPS", new Position(46.58716073, 0.3382104));
         // Make request to our endpoint
-        MvcResult mvcResult = mockMvc.perform(get("/parkings/city/Poitier")
+        MvcResult mvcResult = performAsync(get("/parkings/city/Poitier")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content()
@@ -124,18 +169,37 @@ class ParkingControllerTest {
         assertTrue(parking.equals(parkingResponse[0]));
     }
 
+    @Test
+    public void getParkings_shouldExposeMetrics() throws Exception {
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(ResourceConverter.convertResourceToString(poitierParkingList)));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(ResourceConverter.convertResourceToString(poitierParkingPlaces)));
+        performAsync(get("/parkings/city/Poitier?lat=46.58&lon=0.34&range=1"))
+                .andExpect(status().isOk());
+
+        String metrics = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(metrics.contains("parking_manager_lookup_seconds_count"));
+        assertTrue(metrics.contains("parking_upstream_calls_seconds_count{city=\"Poitier\",host=\"localhost\",outcome=\"success\",}"));
+        assertTrue(metrics.contains("parking_parse_seconds_count{city=\"Poitier\",}"));
+        assertTrue(metrics.contains("parking_mapping_seconds_bucket{city=\"Poitier\","));
+        assertTrue(metrics.contains("parking_range_filter_seconds_count{query=\"range\",}"));
+        assertTrue(metrics.contains("parking_serialization_seconds_count"));
+        assertTrue(metrics.contains("parking_city_parkings{city=\"Poitier\",} 28.0"));
+    }
+
     @Test
     public void getParkingsByName_shouldSucceed() throws Exception {
         // Mock Http call to distant URL
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingListOneEntry);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlacesOneEntry);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
 
         // Prepare compare object
         Parking parking = new Parking("PALAIS DE JUSTICE", "PALAIS DE JUSTICE", "Poitier", 70, 47, "Parking en enclos sous barri\u00e9res payant de 9h \u00e0 19h du lundi au samedi, gratuit dimanche et jours f\u00e9ri\u00e9s.", new Position(46.58595805, 0.35129543));
         // Make request to our endpoint
-        MvcResult mvcResult = mockMvc.perform(get("/parkings/city/Poitier/name/PALAIS DE JUSTICE")
+        MvcResult mvcResult = performAsync(get("/parkings/city/Poitier/name/PALAIS DE JUSTICE")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content()
@@ -149,18 +213,111 @@ class ParkingControllerTest {
         assertTrue(parking.equals(parkingResponse));
     }
 
+    @Test
+    public void getParkingById_shouldSucceed() throws Exception {
+        // Mock Http call to distant URL
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingListOneEntry);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlacesOneEntry);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+
+        // Prepare compare object
+        Parking parking = new Parking("PALAIS DE JUSTICE", "PALAIS DE JUSTICE", "Poitier", 70, 47, "Parking en enclos sous barri\u00e9res payant de 9h \u00e0 19h du lundi au samedi, gratuit dimanche et jours f\u00e9ri\u00e9s.", new Position(46.58595805, 0.35129543));
+        // Make request to our endpoint, the id of the Poitier parkings is their name
+        MvcResult mvcResult = performAsync(get("/parkings/city/Poitier/id/PALAIS DE JUSTICE")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content()
+                        .contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn();
+        //Parse response
+        String response = mvcResult.getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        Parking parkingResponse = objectMapper.readValue(response, Parking.class);
+        //compare values
+        assertTrue(parking.equals(parkingResponse));
+
+        // Unknown id, served from the same snapshot
+        performAsync(get("/parkings/city/Poitier/id/UNKNOWN")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getParkings_ifNoneMatch_shouldReturnNotModified() throws Exception {
+        // Mock Http call to distant URL
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+
+        MvcResult mvcResult = performAsync(get("/parkings/city/Poitier")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn();
+        String eTag = mvcResult.getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Same snapshot, the body is not sent again, for the list and for a single parking
+        performAsync(get("/parkings/city/Poitier")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        performAsync(get("/parkings/city/Poitier/name/PALAIS DE JUSTICE")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        // Another version, the body is sent
+        performAsync(get("/parkings/city/Poitier")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag));
+    }
+
+    @Test
+    public void getParkings_staleSnapshot_shouldFlagResponse() throws Exception {
+        // Snapshot built while the endpoint failed, from its feed fetched an hour ago
+        Instant fetchedAt = Instant.now().minusSeconds(3600);
+        Parking parking = new Parking("GRAND CERF", "GRAND CERF", "Poitier", null, null, null, new Position(46.58716073, 0.3382104));
+        ParkingFeed staleFeed = new ParkingFeed(manager.getRequestsData().get(0), null, Collections.singletonList(parking), fetchedAt).asStale();
+        parkingSnapshotCache.put("Poitier", new ParkingSnapshot("Poitier", Collections.singletonList(parking), Collections.singletonList(staleFeed), Instant.now()));
+
+        performAsync(get("/parkings/city/Poitier")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.WARNING, "110 - \"Response is Stale\""))
+                .andExpect(header().string(ParkingController.STALE_SINCE_HEADER, fetchedAt.toString()));
+    }
+
+    @Test
+    public void getParkings_staleSnapshotIfNoneMatchFresh_shouldReturnStaleResponse() throws Exception {
+        Parking parking = new Parking("GRAND CERF", "GRAND CERF", "Poitier", null, null, null, new Position(46.58716073, 0.3382104));
+        Instant fetchedAt = Instant.now().minusSeconds(3600);
+        ParkingFeed feed = new ParkingFeed(manager.getRequestsData().get(0), null, Collections.singletonList(parking), fetchedAt);
+        parkingSnapshotCache.put("Poitier", new ParkingSnapshot("Poitier", Collections.singletonList(parking), Collections.singletonList(feed), fetchedAt));
+        String eTag = performAsync(get("/parkings/city/Poitier"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Rebuilt from the same feed once its endpoint failed, the parkings are the same but now stale
+        parkingSnapshotCache.put("Poitier", new ParkingSnapshot("Poitier", Collections.singletonList(parking), Collections.singletonList(feed.asStale()), Instant.now()));
+        performAsync(get("/parkings/city/Poitier")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ParkingController.STALE_SINCE_HEADER, fetchedAt.toString()));
+    }
+
     @Test
     public void getParkings_inRange_shouldSucceed() throws Exception {
         // Mock Http call to distant URL
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingListOneEntry);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlacesOneEntry);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
 
         // Prepare compare object
         Parking parking = new Parking("PALAIS DE JUSTICE", "PALAIS DE JUSTICE", "Poitier", 70, 47, "Parking en enclos sous barri\u00e9res payant de 9h \u00e0 19h du lundi au samedi, gratuit dimanche et jours f\u00e9ri\u00e9s.", new Position(46.58595805, 0.35129543));
         // Make request to our endpoint, position is the same as the parking and the range is 1 meter to be sure to have 1 results only
-        MvcResult mvcResult = mockMvc.perform(get("/parkings/city/Poitier?lat=46.58595805&lon=0.35129543&range=0.001")
+        MvcResult mvcResult = performAsync(get("/parkings/city/Poitier?lat=46.58595805&lon=0.35129543&range=0.001")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content()
@@ -174,15 +331,207 @@ class ParkingControllerTest {
         assertTrue(parking.equals(parkingResponse[0]));
     }
 
+    @Test
+    public void getParkings_sortedPageWithFields_shouldSucceed() throws Exception {
+        // Mock Http call to distant URL
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+
+        // Second page of 3 parkings with the most remaining places, only what a map needs
+        MvcResult mvcResult = performAsync(get("/parkings/city/Poitier?sort=places&offset=1&limit=3&fields=id,position,nbPlacesRemaining")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ParkingController.TOTAL_COUNT_HEADER, "28"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn();
+        //Parse response
+        String response = mvcResult.getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        JsonNode parkingResponse = objectMapper.readTree(response);
+        //compare values
+        assertEquals(parkingResponse.size(), 3);
+        for (int i = 0; i < parkingResponse.size(); i++) {
+            JsonNode parking = parkingResponse.get(i);
+            List<String> properties = new ArrayList<>();
+            parking.fieldNames().forEachRemaining(properties::add);
+            assertEquals(properties, List.of("id", "nbPlacesRemaining", "position"));
+            assertTrue(parking.get("position").isNull() || parking.get("position").has("latitude"));
+            assertTrue(i == 0 || parkingResponse.get(i - 1).get("nbPlacesRemaining").asInt() >= parking.get("nbPlacesRemaining").asInt());
+        }
+
+        // Sorted by distance from the PALAIS DE JUSTICE parking, with all the properties
+        mvcResult = performAsync(get("/parkings/city/Poitier?lat=46.58595805&lon=0.35129543&range=1&sort=distance&limit=1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        Parking[] nearest = objectMapper.readValue(mvcResult.getResponse().getContentAsString(StandardCharsets.UTF_8), Parking[].class);
+        assertEquals(nearest.length, 1);
+        assertEquals(nearest[0].getName(), "PALAIS DE JUSTICE");
+        assertEquals(nearest[0].getNbPlaces(), 70);
+    }
+
+    @Test
+    public void getParkings_invalidQuery_shouldFail() throws Exception {
+        performAsync(get("/parkings/city/Poitier?sort=distance")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParkingQueryException));
+        performAsync(get("/parkings/city/Poitier?sort=price")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        performAsync(get("/parkings/city/Poitier?fields=id,price")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        performAsync(get("/parkings/city/Poitier?limit=-1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getNearestParkings_withPlaces_shouldSucceed() throws Exception {
+        // Mock Http call to distant URL
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+
+        // Make request to our endpoint, position is the same as the PALAIS DE JUSTICE parking
+        MvcResult mvcResult = performAsync(get("/parkings/city/Poitier/nearest?lat=46.58595805&lon=0.35129543&k=3&minPlacesRemaining=1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content()
+                        .contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn();
+        //Parse response
+        String response = mvcResult.getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        NearbyParking[] parkingResponse = objectMapper.readValue(response, NearbyParking[].class);
+        //compare values
+        assertEquals(parkingResponse.length, 3);
+        assertEquals(parkingResponse[0].getParking().getName(), "PALAIS DE JUSTICE");
+        assertEquals(parkingResponse[0].getDistance(), 0);
+        for (int i = 0; i < parkingResponse.length; i++) {
+            assertTrue(parkingResponse[i].getParking().getNbPlacesRemaining() >= 1);
+            assertTrue(i == 0 || parkingResponse[i - 1].getDistance() <= parkingResponse[i].getDistance());
+        }
+    }
+
+    @Test
+    public void getNearestParkings_kOutOfBounds_shouldFail() throws Exception {
+        performAsync(get("/parkings/city/Poitier/nearest?lat=46.58595805&lon=0.35129543&k=" + Integer.MAX_VALUE)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParkingQueryException));
+        performAsync(get("/parkings/city/Poitier/nearest?lat=46.58595805&lon=0.35129543&k=0")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getCitiesParkings_shouldAnswerEachCity() throws Exception {
+        // A second city whose list endpoint doesn't answer a json
+        List<RequestData> brokenRequestsData = new ArrayList<>();
+        brokenRequestsData.add(new RequestData("get", baseUrl + "/broken/list", null, manager.getRequestsData().get(0).getiSMapper()));
+        parkingManagerRepository.insert(new ParkingManager("Broken", brokenRequestsData));
+        dispatcher.enqueue("/broken/list", new MockResponse().setResponseCode(200).setBody("This body is not a json"));
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+
+        // Make request to our endpoint, Poitier is given twice and Nowhere has no parking manager
+        MvcResult mvcResult = performAsync(get("/parkings/cities?cities=Poitier,Broken,Nowhere,Poitier")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        String response = mvcResult.getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        CityParkings[] citiesResponse = objectMapper.findAndRegisterModules().readValue(response, CityParkings[].class);
+        assertEquals(citiesResponse.length, 3);
+        assertEquals(citiesResponse[0].getCity(), "Poitier");
+        assertEquals(citiesResponse[0].getStatus(), 200);
+        assertEquals(citiesResponse[0].getParkings().size(), parkingSnapshotCache.get("Poitier").getParkings().size());
+        assertEquals(citiesResponse[0].getVersion(), parkingSnapshotCache.get("Poitier").getVersion());
+        assertEquals(citiesResponse[1].getCity(), "Broken");
+        assertEquals(citiesResponse[1].getStatus(), 500);
+        assertEquals(citiesResponse[1].getError(), "Failed to retrieve parkings for city Broken");
+        assertEquals(citiesResponse[2].getCity(), "Nowhere");
+        assertEquals(citiesResponse[2].getStatus(), 404);
+        assertEquals(citiesResponse[2].getError(), "No parking manager found for city Nowhere");
+    }
+
+    @Test
+    public void getCitiesParkings_tooManyCities_shouldFail() throws Exception {
+        StringBuilder cities = new StringBuilder("City0");
+        for (int i = 1; i <= 20; i++) {
+            cities.append(",City").append(i);
+        }
+        performAsync(get("/parkings/cities?cities=" + cities)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof TooManyCitiesException));
+    }
+
+    @Test
+    public void getParkingsNear_shouldSearchTheBuiltCities() throws Exception {
+        // Mock Http call to distant URL
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        // The city is indexed once built
+        performAsync(get("/parkings/city/Poitier")).andExpect(status().isOk());
+        assertEquals(cityBoundsIndex.getCityCount(), 1);
+
+        // Make request to our endpoint, position is the same as the PALAIS DE JUSTICE parking
+        MvcResult mvcResult = performAsync(get("/parkings/near?lat=46.58595805&lon=0.35129543&range=1&k=3")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        String response = mvcResult.getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        NearbyParking[] parkingResponse = objectMapper.readValue(response, NearbyParking[].class);
+        assertEquals(parkingResponse.length, 3);
+        assertEquals(parkingResponse[0].getParking().getName(), "PALAIS DE JUSTICE");
+        assertEquals(parkingResponse[0].getParking().getCity(), "Poitier");
+        assertEquals(parkingResponse[0].getDistance(), 0);
+        for (int i = 0; i < parkingResponse.length; i++) {
+            assertTrue(parkingResponse[i].getDistance() <= 1);
+            assertTrue(i == 0 || parkingResponse[i - 1].getDistance() <= parkingResponse[i].getDistance());
+        }
+
+        // Far from Poitier (Paris)
+        performAsync(get("/parkings/near?lat=48.8566&lon=2.3522&range=5")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    public void getParkingsNear_invalidQuery_shouldFail() throws Exception {
+        performAsync(get("/parkings/near?lat=46.58595805&lon=0.35129543&k=-1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParkingQueryException));
+        performAsync(get("/parkings/near?lat=46.58595805&lon=0.35129543&range=10000")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        performAsync(get("/parkings/near?lat=46.58595805&lon=0.35129543&range=-1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void getParkings_shouldFail_UrlNotReachable() throws Exception {
         manager.getRequestsData().get(0).setUrl("www.InstantSystem-False-url.aze");
         parkingManagerRepository.save(manager);
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         
         // Make request to our endpoint
-        mockMvc.perform(get("/parkings/city/Poitier")
+        performAsync(get("/parkings/city/Poitier")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().is5xxServerError())
                 .andExpect(result -> assertTrue(result.getResolvedException() instanceof RestCallException))
@@ -196,20 +545,20 @@ class ParkingControllerTest {
         parkingManagerRepository.save(manager);
 
         // Make request to our endpoint
-        mockMvc.perform(get("/parkings/city/Poitier")
+        performAsync(get("/parkings/city/Poitier")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().is(406))
                 .andExpect(result -> assertTrue(result.getResolvedException() instanceof UnexpectedHttpMethodException))
                 .andExpect(result -> assertEquals(result.getResolvedException().getMessage(),
 String.format("Failed to process the request for the city : Poitier, at url : %s, with method : whatmethod?." +
-        "\nPlease contact administrator, configuration is wrong for this city endpoint", baseUrl)));
+        "\nPlease contact administrator, configuration is wrong for this city endpoint", baseUrl + "/list")));
     }
 
     @Test
     public void getParkings_shouldFail_BodyParseError() throws Exception {
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("This body is not a json, will trigger an Exception"));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody("This body is not a json, will trigger an Exception"));
         // Make request to our endpoint
-        mockMvc.perform(get("/parkings/city/Poitier")
+        performAsync(get("/parkings/city/Poitier")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isInternalServerError())
                 .andExpect(result -> assertTrue(result.getResolvedException() instanceof BuildParkingException))
@@ -222,13 +571,33 @@ String.format("Failed to process the request for the city : Poitier, at url : %s
         manager.getRequestsData().get(0).getiSMapper().getiSFields().setName("fields.unknown");
         parkingManagerRepository.save(manager);
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         // Make request to our endpoint
-        mockMvc.perform(get("/parkings/city/Poitier")
+        performAsync(get("/parkings/city/Poitier")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isInternalServerError())
                 .andExpect(result -> assertTrue(result.getResolvedException() instanceof InstantSystemMapperException))
                 .andExpect(result -> assertEquals(result.getResolvedException().getMessage(),
 "Failed to retrieve parking for city Poitier\n We were not able to map the data, please contact your administrator."));
+        assertTrue(mockMvc.perform(get("/actuator/prometheus")).andReturn().getResponse().getContentAsString()
+                .contains("parking_mapping_errors_total{cause=\"path_not_found\",city=\"Poitier\",}"));
+    }
+
+    @Test
+    public void asyncRequests_shouldTimeoutButNotStreams() throws Exception {
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+
+        MvcResult request = mockMvc.perform(get("/parkings/city/Poitier"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(request.getRequest().getAsyncContext().getTimeout(), 30000L);
+
+        MvcResult stream = mockMvc.perform(get("/parkings/city/Poitier/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(stream.getRequest().getAsyncContext().getTimeout(), -1L);
     }
-}
\ No newline at end of file
+}
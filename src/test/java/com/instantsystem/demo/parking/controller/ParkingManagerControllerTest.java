@@ -1,6 +1,7 @@
 package com.instantsystem.demo.parking.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instantsystem.demo.parking.cache.ParkingManagerCache;
 import com.instantsystem.demo.parking.entity.ISFields;
 import com.instantsystem.demo.parking.entity.ISMapper;
 import com.instantsystem.demo.parking.entity.ParkingManager;
@@ -26,7 +27,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+@SpringBootTest(properties = "parking.polling.enabled=false")
 @AutoConfigureMockMvc
 class ParkingManagerControllerTest {
 
@@ -36,6 +37,9 @@ class ParkingManagerControllerTest {
     
     @Autowired
     private ParkingManagerRepository parkingManagerRepository;
+
+    @Autowired
+    private ParkingManagerCache parkingManagerCache;
     
     private ParkingManager manager;
 
@@ -43,8 +47,9 @@ class ParkingManagerControllerTest {
 
     @BeforeEach
     void setUp() {
-        // Clean DB just in case
+        // Clean DB and cache just in case
         parkingManagerRepository.deleteAll();
+        parkingManagerCache.invalidateAll();
 
         // Populate DB
         ISFields isFields1 = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
@@ -0,0 +1,76 @@
+package com.instantsystem.demo.parking.index;
+
+import com.instantsystem.demo.helper.SyntheticCity;
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.util.DistanceCalculator;
+import com.instantsystem.demo.util.DistanceUnit;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CityBoundsIndexTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void findCities_shouldNeverMissACityInRange() {
+        List<SyntheticCity> cities = SyntheticCity.generate(300, 5, 50, 42);
+        CityBoundsIndex index = new CityBoundsIndex(null);
+        for (SyntheticCity city : cities) {
+            index.update(new ParkingSnapshot(city.getName(), city.parkings(), Instant.now()));
+        }
+        assertEquals(index.getCityCount(), 300);
+        int candidates = 0;
+        for (int i = 0; i < 1000; i++) {
+            SyntheticCity near = cities.get(random.nextInt(cities.size()));
+            double lat = near.getLatitude() + (random.nextDouble() - 0.5) * 0.3;
+            double lon = near.getLongitude() + (random.nextDouble() - 0.5) * 0.3;
+            double range = random.nextDouble() * 5;
+            List<String> found = index.findCities(lat, lon, range);
+            candidates += found.size();
+            for (SyntheticCity city : cities) {
+                if (hasParkingInRange(city.parkings(), lat, lon, range)) {
+                    assertTrue(found.contains(city.getName()), city.getName() + " has parkings in range");
+                }
+            }
+        }
+        // Only the cities around the position are retrieved
+        assertTrue(candidates < 1000 * 5);
+    }
+
+    @Test
+    public void update_cityWithoutPosition_shouldRemoveIt() {
+        SyntheticCity city = SyntheticCity.aroundPoitiers(10);
+        CityBoundsIndex index = new CityBoundsIndex(null);
+        index.update(new ParkingSnapshot(city.getName(), city.parkings(), Instant.now()));
+        assertEquals(index.findCities(city.getLatitude(), city.getLongitude(), 0.5), Collections.singletonList(city.getName()));
+        index.update(new ParkingSnapshot(city.getName(), Collections.singletonList(new Parking()), Instant.now()));
+        assertEquals(index.getCityCount(), 0);
+        assertEquals(index.findCities(city.getLatitude(), city.getLongitude(), 0.5), Collections.emptyList());
+    }
+
+    @Test
+    public void remove_shouldRemoveTheCity() {
+        SyntheticCity city = SyntheticCity.aroundPoitiers(10);
+        CityBoundsIndex index = new CityBoundsIndex(null);
+        index.update(new ParkingSnapshot(city.getName(), city.parkings(), Instant.now()));
+        index.remove(city.getName());
+        assertEquals(index.findCities(city.getLatitude(), city.getLongitude(), 0.5), Collections.emptyList());
+    }
+
+    private static boolean hasParkingInRange(List<Parking> parkings, double lat, double lon, double range) {
+        for (Parking parking : parkings) {
+            if (DistanceCalculator.distance(lat, lon, parking.getPosition().getLatitude(), parking.getPosition().getLongitude(), DistanceUnit.KILOMETERS) <= range) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
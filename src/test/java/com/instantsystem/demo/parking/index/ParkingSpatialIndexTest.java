@@ -0,0 +1,152 @@
+package com.instantsystem.demo.parking.index;
+
+import com.instantsystem.demo.parking.entity.NearbyParking;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.Position;
+import com.instantsystem.demo.util.DistanceCalculator;
+import com.instantsystem.demo.util.DistanceUnit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParkingSpatialIndexTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void findInRange_cityParkings_shouldMatchFilter() {
+        List<Parking> parkings = generate(2000, 46.58, 0.34, 0.1);
+        ParkingSpatialIndex index = new ParkingSpatialIndex(parkings);
+        for (int i = 0; i < 500; i++) {
+            double lat = 46.58 + (random.nextDouble() - 0.5) * 0.2;
+            double lon = 0.34 + (random.nextDouble() - 0.5) * 0.2;
+            double range = random.nextDouble() * 3;
+            assertEquals(index.findInRange(lat, lon, range), filter(parkings, lat, lon, range));
+        }
+    }
+
+    @Test
+    public void findInRange_onTheRangeLimit_shouldMatchFilter() {
+        List<Parking> parkings = generate(500, 46.58, 0.34, 0.05);
+        ParkingSpatialIndex index = new ParkingSpatialIndex(parkings);
+        for (Parking parking : parkings.subList(0, 100)) {
+            if (parking.getPosition() == null) {
+                continue;
+            }
+            // The range is exactly the distance of the parking
+            double range = DistanceCalculator.distance(46.58, 0.34, parking.getPosition().getLatitude(), parking.getPosition().getLongitude(), DistanceUnit.KILOMETERS);
+            List<Parking> inRange = index.findInRange(46.58, 0.34, range);
+            assertEquals(inRange, filter(parkings, 46.58, 0.34, range));
+            assertTrue(inRange.contains(parking));
+        }
+    }
+
+    @Test
+    public void findInRange_nearPoleAndAntimeridian_shouldMatchFilter() {
+        List<Parking> parkings = new ArrayList<>();
+        parkings.addAll(generate(300, 89.9, 0, 0.3));
+        parkings.addAll(generate(300, 0, 179.99, 0.05));
+        parkings.addAll(generate(300, 0, -179.99, 0.05));
+        ParkingSpatialIndex index = new ParkingSpatialIndex(parkings);
+        for (double[] query : Arrays.asList(new double[]{89.95, 10, 20}, new double[]{0, 179.999, 5}, new double[]{0.01, -179.999, 3}, new double[]{10, 10, 20000})) {
+            assertEquals(index.findInRange(query[0], query[1], query[2]), filter(parkings, query[0], query[1], query[2]));
+        }
+    }
+
+    @Test
+    public void findNearest_shouldMatchSortedFilter() {
+        List<Parking> parkings = generate(2000, 46.58, 0.34, 0.1);
+        for (int i = 0; i < parkings.size(); i++) {
+            parkings.get(i).setNbPlacesRemaining(i % 3 == 0 ? null : i % 7);
+        }
+        ParkingSpatialIndex index = new ParkingSpatialIndex(parkings);
+        Predicate<Parking> withPlaces = p -> p.getNbPlacesRemaining() != null && p.getNbPlacesRemaining() >= 2;
+        for (int i = 0; i < 200; i++) {
+            double lat = 46.58 + (random.nextDouble() - 0.5) * 0.4;
+            double lon = 0.34 + (random.nextDouble() - 0.5) * 0.4;
+            int k = 1 + random.nextInt(10);
+            List<NearbyParking> expected = parkings.stream()
+                    .filter(p -> p.getPosition() != null)
+                    .filter(withPlaces)
+                    .map(p -> new NearbyParking(p, DistanceCalculator.distance(lat, lon, p.getPosition().getLatitude(), p.getPosition().getLongitude(), DistanceUnit.KILOMETERS)))
+                    .sorted(Comparator.comparingDouble(NearbyParking::getDistance))
+                    .limit(k)
+                    .collect(Collectors.toList());
+            assertEquals(index.findNearest(lat, lon, k, withPlaces), expected);
+        }
+    }
+
+    @Test
+    public void findNearestInRange_shouldMatchSortedFilter() {
+        List<Parking> parkings = generate(2000, 46.58, 0.34, 0.1);
+        for (int i = 0; i < parkings.size(); i++) {
+            parkings.get(i).setNbPlacesRemaining(i % 3 == 0 ? null : i % 7);
+        }
+        ParkingSpatialIndex index = new ParkingSpatialIndex(parkings);
+        Predicate<Parking> withPlaces = p -> p.getNbPlacesRemaining() != null && p.getNbPlacesRemaining() >= 2;
+        for (int i = 0; i < 200; i++) {
+            double lat = 46.58 + (random.nextDouble() - 0.5) * 0.4;
+            double lon = 0.34 + (random.nextDouble() - 0.5) * 0.4;
+            double range = random.nextDouble() * 3;
+            int k = 1 + random.nextInt(10);
+            List<NearbyParking> expected = filter(parkings, lat, lon, range).stream()
+                    .filter(withPlaces)
+                    .map(p -> new NearbyParking(p, DistanceCalculator.distance(lat, lon, p.getPosition().getLatitude(), p.getPosition().getLongitude(), DistanceUnit.KILOMETERS)))
+                    .sorted(Comparator.comparingDouble(NearbyParking::getDistance))
+                    .limit(k)
+                    .collect(Collectors.toList());
+            assertEquals(index.findNearestInRange(lat, lon, range, k, withPlaces), expected);
+        }
+    }
+
+    @Test
+    public void findNearest_lessMatchesThanK_shouldReturnAll() {
+        List<Parking> parkings = generate(100, 46.58, 0.34, 0.1);
+        ParkingSpatialIndex index = new ParkingSpatialIndex(parkings);
+        // From the other side of the earth
+        assertEquals(index.findNearest(-40, -170, 500, p -> true).size(), index.getIndexedCount());
+        assertEquals(index.findNearest(46.58, 0.34, 0, p -> true).size(), 0);
+        assertEquals(index.findNearest(46.58, 0.34, 5, p -> false).size(), 0);
+    }
+
+    @Test
+    public void findInRange_noPosition_shouldBeExcluded() {
+        List<Parking> parkings = Arrays.asList(new Parking("A", "A", "Poitier", null, null, null, null),
+                new Parking("B", "B", "Poitier", null, null, null, new Position(null, 0.34)),
+                new Parking("C", "C", "Poitier", null, null, null, new Position(46.58, 0.34)));
+        ParkingSpatialIndex index = new ParkingSpatialIndex(parkings);
+        assertEquals(index.getIndexedCount(), 1);
+        assertEquals(index.findInRange(46.58, 0.34, 0.5), parkings.subList(2, 3));
+    }
+
+    /**
+     * Generate parkings around a position, some of them without position
+     */
+    private List<Parking> generate(int count, double lat, double lon, double spread) {
+        List<Parking> parkings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Position position = i % 50 == 0 ? null : new Position(lat + (random.nextDouble() - 0.5) * spread, lon + (random.nextDouble() - 0.5) * spread);
+            parkings.add(new Parking(String.valueOf(i), "Parking " + i, "Poitier", null, null, null, position));
+        }
+        return parkings;
+    }
+
+    /**
+     * The range filter without index
+     */
+    private static List<Parking> filter(List<Parking> parkings, double lat, double lon, double range) {
+        return parkings.stream()
+                .filter(p -> p.getPosition() != null)
+                .filter(p -> DistanceCalculator.distance(lat, lon, p.getPosition().getLatitude(), p.getPosition().getLongitude(), DistanceUnit.KILOMETERS) <= range)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,107 @@
+package com.instantsystem.demo.parking.mapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instantsystem.demo.helper.ResourceConverter;
+import com.instantsystem.demo.parking.entity.ISFields;
+import com.instantsystem.demo.parking.entity.ISMapper;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.Position;
+import com.jayway.jsonpath.PathNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParkingMappingEngineTest {
+
+    private final ParkingMappingEngine engine = new ParkingMappingEngine(new ObjectMapper());
+
+    private final byte[] poitierParkingList = ResourceConverter.convertResourceToString(new ClassPathResource("poitierParkingList.json")).getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] poitierParkingPlaces = ResourceConverter.convertResourceToString(new ClassPathResource("poitierParkingPlaces.json")).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void map_parkingList_shouldSucceed() throws IOException {
+        ISFields isFields = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
+        List<Parking> parkings = engine.map(poitierParkingList, engine.getPlan(new ISMapper("JSONObject", "records", isFields)));
+        assertEquals(parkings.size(), 26);
+        assertEquals(parkings.get(0).getId(), "PALAIS DE JUSTICE");
+        assertEquals(parkings.get(0).getName(), "PALAIS DE JUSTICE");
+        assertEquals(parkings.get(0).getPosition(), new Position(46.58595805, 0.35129543));
+        assertNull(parkings.get(0).getNbPlaces());
+    }
+
+    @Test
+    public void map_parkingPlaces_shouldConvertNumbers() throws IOException {
+        ISFields isFields = new ISFields("fields.nom", "fields.nom", null, "fields.capacite", "fields.places_restantes", null, null, null);
+        List<Parking> parkings = engine.map(poitierParkingPlaces, engine.getPlan(new ISMapper("JSONObject", "records", isFields)));
+        assertEquals(parkings.size(), 9);
+        assertEquals(parkings.get(0).getNbPlaces(), 665);
+        assertEquals(parkings.get(0).getNbPlacesRemaining(), 382);
+        assertNull(parkings.get(0).getPosition());
+    }
+
+    @Test
+    public void map_nestedListAndStringNumbers_shouldSucceed() throws IOException {
+        byte[] body = "{\"meta\": {\"count\": 1}, \"data\": {\"records\": [{\"id\": 12, \"free\": \"47\", \"geo\": {\"lat\": \"46.5\", \"lon\": 0.3}}]}}".getBytes(StandardCharsets.UTF_8);
+        ISFields isFields = new ISFields("id", null, null, null, "free", null, "geo.lat", "geo.lon");
+        List<Parking> parkings = engine.map(body, engine.getPlan(new ISMapper("JSONObject", "data.records", isFields)));
+        assertEquals(parkings.size(), 1);
+        assertEquals(parkings.get(0).getId(), "12");
+        assertEquals(parkings.get(0).getNbPlacesRemaining(), 47);
+        assertEquals(parkings.get(0).getPosition(), new Position(46.5, 0.3));
+    }
+
+    @Test
+    public void map_jsonPathOnlyMapper_shouldMatchStreaming() throws IOException {
+        ISFields streamed = new ISFields("fields.nom", "fields.nom", null, "fields.capacite", "fields.places_restantes", null, null, null);
+        ISFields jsonPath = new ISFields("fields['nom']", "fields.nom", null, "fields.capacite", "fields.places_restantes", null, null, null);
+        ParkingExtractionPlan jsonPathPlan = engine.getPlan(new ISMapper("JSONObject", "records", jsonPath));
+        assertFalse(jsonPathPlan.isStreamable());
+        assertEquals(engine.map(poitierParkingPlaces, engine.getPlan(new ISMapper("JSONObject", "records", streamed))),
+                engine.map(poitierParkingPlaces, jsonPathPlan));
+    }
+
+    @Test
+    public void map_nestedListJsonPathMapper_shouldMatchStreaming() throws IOException {
+        byte[] body = "{\"data\": {\"records\": [{\"id\": 12, \"free\": \"47\"}, {\"id\": 13, \"free\": 5}]}}".getBytes(StandardCharsets.UTF_8);
+        ParkingExtractionPlan jsonPathPlan = engine.getPlan(new ISMapper("JSONObject", "data.records", new ISFields("['id']", null, null, null, "free", null, null, null)));
+        assertFalse(jsonPathPlan.isStreamable());
+        assertEquals(engine.map(body, jsonPathPlan),
+                engine.map(body, engine.getPlan(new ISMapper("JSONObject", "data.records", new ISFields("id", null, null, null, "free", null, null, null)))));
+    }
+
+    @Test
+    public void merge_shouldOnlySetMapperFields() {
+        ISFields isFields = new ISFields("fields.nom", null, null, "fields.capacite", "fields.places_restantes", null, null, null);
+        ParkingExtractionPlan plan = engine.getPlan(new ISMapper("JSONObject", "records", isFields));
+        Parking target = new Parking("A", "A", "Poitier", null, null, "description", new Position(46.5, 0.3));
+        plan.merge(new Parking("A", null, null, 70, 47, null, null), target);
+        assertEquals(target, new Parking("A", "A", "Poitier", 70, 47, "description", new Position(46.5, 0.3)));
+    }
+
+    @Test
+    public void map_unknownField_shouldFail() {
+        ISFields isFields = new ISFields("fields.nom", "fields.unknown", null, null, null, null, null, null);
+        ParkingExtractionPlan plan = engine.getPlan(new ISMapper("JSONObject", "records", isFields));
+        assertThrows(PathNotFoundException.class, () -> engine.map(poitierParkingList, plan), "PathNotFoundException was expected");
+    }
+
+    @Test
+    public void map_unknownList_shouldFail() {
+        ISFields isFields = new ISFields("fields.nom", "fields.nom", null, null, null, null, null, null);
+        ParkingExtractionPlan plan = engine.getPlan(new ISMapper("JSONObject", "unknown", isFields));
+        assertThrows(IOException.class, () -> engine.map(poitierParkingList, plan), "IOException was expected");
+    }
+
+    @Test
+    public void map_notJson_shouldFail() {
+        ISFields isFields = new ISFields("fields.nom", "fields.nom", null, null, null, null, null, null);
+        ParkingExtractionPlan plan = engine.getPlan(new ISMapper("JSONObject", "records", isFields));
+        assertThrows(IOException.class, () -> engine.map("This body is not a json, will trigger an Exception".getBytes(StandardCharsets.UTF_8), plan), "IOException was expected");
+    }
+}
@@ -0,0 +1,82 @@
+package com.instantsystem.demo.parking.polling;
+
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
+import com.instantsystem.demo.parking.entity.ParkingManager;
+import com.instantsystem.demo.parking.exception.BuildParkingException;
+import com.instantsystem.demo.parking.service.ParkingManagerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ParkingPollingSchedulerTest {
+
+    private final ParkingManagerService parkingManagerService = mock(ParkingManagerService.class);
+
+    private final ParkingSnapshotCache parkingSnapshotCache = mock(ParkingSnapshotCache.class);
+
+    private final ParkingPollingScheduler scheduler = new ParkingPollingScheduler(parkingManagerService, parkingSnapshotCache, 2, Duration.ofMinutes(1),
+            new PollingPolicy(Duration.ofMillis(20), Duration.ofMillis(100), 0.1, 0, 0, Duration.ofMillis(20)));
+
+    private final ParkingManager manager = new ParkingManager("Poitier", new ArrayList<>());
+
+    @AfterEach
+    void clean() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void discover_newCity_shouldRefreshSnapshots() {
+        ParkingSnapshot snapshot = new ParkingSnapshot("Poitier", Collections.emptyList(), Instant.now());
+        when(parkingManagerService.getAll()).thenReturn(Collections.singletonList(manager));
+        when(parkingSnapshotCache.refreshAsync("Poitier")).thenReturn(Mono.just(snapshot));
+        scheduler.discover();
+        // Polled again and again in background, through the cache
+        verify(parkingSnapshotCache, timeout(2000).atLeast(3)).refreshAsync("Poitier");
+        verify(parkingSnapshotCache, never()).put(any(), any());
+    }
+
+    @Test
+    public void discover_failingCity_shouldKeepPolling() {
+        when(parkingManagerService.getAll()).thenReturn(Collections.singletonList(manager));
+        when(parkingSnapshotCache.refreshAsync("Poitier")).thenReturn(Mono.error(new BuildParkingException("Failed to retrieve parkings for city Poitier")));
+        scheduler.discover();
+        verify(parkingSnapshotCache, timeout(2000).atLeast(3)).refreshAsync("Poitier");
+    }
+
+    @Test
+    public void discover_removedCity_shouldStopPolling() {
+        when(parkingManagerService.getAll()).thenReturn(Collections.singletonList(manager));
+        when(parkingSnapshotCache.refreshAsync("Poitier")).thenReturn(Mono.just(new ParkingSnapshot("Poitier", Collections.emptyList(), Instant.now())));
+        scheduler.discover();
+        when(parkingManagerService.getAll()).thenReturn(Collections.emptyList());
+        scheduler.discover();
+        assertNull(scheduler.getInterval("Poitier"));
+        verify(parkingSnapshotCache).invalidate("Poitier");
+    }
+
+    @Test
+    public void poll_cityRemovedDuringBuild_shouldStopPolling() {
+        List<ParkingManager> managers = new CopyOnWriteArrayList<>(Collections.singletonList(manager));
+        when(parkingManagerService.getAll()).thenReturn(managers);
+        when(parkingSnapshotCache.refreshAsync("Poitier")).thenReturn(Mono.fromCallable(() -> {
+            managers.clear();
+            scheduler.discover();
+            return new ParkingSnapshot("Poitier", Collections.emptyList(), Instant.now());
+        }));
+        scheduler.discover();
+        verify(parkingSnapshotCache, timeout(2000)).invalidate("Poitier");
+        verify(parkingSnapshotCache, after(300).times(1)).refreshAsync("Poitier");
+    }
+}
@@ -0,0 +1,66 @@
+package com.instantsystem.demo.parking.polling;
+
+import com.instantsystem.demo.parking.entity.Parking;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PollingPolicyTest {
+
+    private final PollingPolicy policy = new PollingPolicy(Duration.ofSeconds(10), Duration.ofMinutes(5), 0.1, 1, 6, Duration.ofMinutes(2));
+
+    private final LocalTime day = LocalTime.of(14, 0);
+
+    @Test
+    public void nextInterval_manyChanges_shouldHalve() {
+        assertEquals(policy.nextInterval(Duration.ofSeconds(60), 0.5, false, day), Duration.ofSeconds(30));
+    }
+
+    @Test
+    public void nextInterval_fewChanges_shouldKeep() {
+        assertEquals(policy.nextInterval(Duration.ofSeconds(60), 0.05, false, day), Duration.ofSeconds(60));
+    }
+
+    @Test
+    public void nextInterval_noChange_shouldIncrease() {
+        assertEquals(policy.nextInterval(Duration.ofSeconds(60), 0, false, day), Duration.ofSeconds(90));
+    }
+
+    @Test
+    public void nextInterval_failed_shouldDouble() {
+        assertEquals(policy.nextInterval(Duration.ofSeconds(60), 0, true, day), Duration.ofSeconds(120));
+    }
+
+    @Test
+    public void nextInterval_shouldStayInBounds() {
+        assertEquals(policy.nextInterval(Duration.ofSeconds(10), 1, false, day), Duration.ofSeconds(10));
+        assertEquals(policy.nextInterval(Duration.ofMinutes(4), 0, true, day), Duration.ofMinutes(5));
+    }
+
+    @Test
+    public void nextInterval_quietHours_shouldUseQuietMin() {
+        assertEquals(policy.nextInterval(Duration.ofSeconds(10), 1, false, LocalTime.of(3, 0)), Duration.ofMinutes(2));
+        PollingPolicy overMidnight = new PollingPolicy(Duration.ofSeconds(10), Duration.ofMinutes(5), 0.1, 22, 6, Duration.ofMinutes(2));
+        assertEquals(overMidnight.nextInterval(Duration.ofSeconds(10), 1, false, LocalTime.of(23, 0)), Duration.ofMinutes(2));
+        assertEquals(overMidnight.nextInterval(Duration.ofSeconds(10), 1, false, day), Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void changeRatio_shouldCountChangedAndNewParkings() {
+        List<Parking> previous = Arrays.asList(parking("A", 10), parking("B", 20), parking("C", 30), parking("D", 40));
+        List<Parking> current = Arrays.asList(parking("A", 10), parking("B", 21), parking("C", 30), parking("E", 40));
+        assertEquals(PollingPolicy.changeRatio(previous, current), 0.5);
+        assertEquals(PollingPolicy.changeRatio(null, current), 1.0);
+        assertEquals(PollingPolicy.changeRatio(previous, Collections.emptyList()), 0.0);
+    }
+
+    private static Parking parking(String id, Integer nbPlacesRemaining) {
+        return new Parking(id, id, "Poitier", null, nbPlacesRemaining, null, null);
+    }
+}
@@ -1,5 +1,6 @@
 package com.instantsystem.demo.parking.service;
 
+import com.instantsystem.demo.parking.cache.ParkingManagerCache;
 import com.instantsystem.demo.parking.entity.ISFields;
 import com.instantsystem.demo.parking.entity.ISMapper;
 import com.instantsystem.demo.parking.entity.ParkingManager;
@@ -13,16 +14,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "parking.polling.enabled=false")
 class ParkingManagerServiceTest {
 
     @Autowired
     private ParkingManagerRepository parkingManagerRepository;
 
+    @Autowired
+    private ParkingManagerCache parkingManagerCache;
+
     @Autowired
     private ParkingManagerService parkingManagerService;
 
@@ -30,8 +36,9 @@ class ParkingManagerServiceTest {
 
     @BeforeEach
     void setUp() {
-        // Clean DB just in case
+        // Clean DB and cache just in case
         parkingManagerRepository.deleteAll();
+        parkingManagerCache.invalidateAll();
 
         // Populate DB
         ISFields isFields1 = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
@@ -73,6 +80,56 @@ class ParkingManagerServiceTest {
         }, "NonExistingParkingManagerException was expected");
     }
 
+    @Test
+    public void getByCity_twice_shouldUseCache() {
+        parkingManagerService.getByCity("Poitier");
+        long hits = parkingManagerCache.getHitCount();
+        // Removed from DB without the service, still in the cache
+        parkingManagerRepository.deleteAll();
+        assertEquals(parkingManagerService.getByCity("Poitier"), manager);
+        assertEquals(parkingManagerCache.getHitCount(), hits + 1);
+    }
+
+    @Test
+    public void getByCity_unknownCityTwice_shouldUseCache() {
+        assertThrows(NonExistingParkingManagerException.class, () -> parkingManagerService.getByCity("Sophia-antipolis"));
+        long misses = parkingManagerCache.getMissCount();
+        long unknownHits = parkingManagerCache.getUnknownHitCount();
+        assertThrows(NonExistingParkingManagerException.class, () -> parkingManagerService.getByCity("Sophia-antipolis"));
+        assertEquals(parkingManagerCache.getMissCount(), misses);
+        assertEquals(parkingManagerCache.getUnknownHitCount(), unknownHits + 1);
+    }
+
+    @Test
+    public void getAsyncByCities_shouldCacheFoundAndUnknownCities() {
+        Map<String, ParkingManager> parkingManagers = parkingManagerService.getAsyncByCities(Arrays.asList("Poitier", "Sophia-antipolis")).block();
+        assertEquals(parkingManagers.size(), 1);
+        assertEquals(parkingManagers.get("Poitier"), manager);
+        // Both cities are cached, the unknown one too
+        parkingManagerRepository.deleteAll();
+        long misses = parkingManagerCache.getMissCount();
+        assertEquals(parkingManagerService.getAsyncByCities(Arrays.asList("Poitier", "Sophia-antipolis")).block(), parkingManagers);
+        assertEquals(parkingManagerService.getByCity("Poitier"), manager);
+        assertThrows(NonExistingParkingManagerException.class, () -> parkingManagerService.getByCity("Sophia-antipolis"));
+        assertEquals(parkingManagerCache.getMissCount(), misses);
+    }
+
+    @Test
+    public void getByCity_afterCreate_shouldSucceed() {
+        assertThrows(NonExistingParkingManagerException.class, () -> parkingManagerService.getByCity("Sophia-antipolis"));
+        ParkingManager created = parkingManagerService.createParkingManager(new ParkingManager("Sophia-antipolis", new ArrayList<>()));
+        assertEquals(parkingManagerService.getByCity("Sophia-antipolis"), created);
+    }
+
+    @Test
+    public void getByCity_afterUpdateAndDelete_shouldSucceed() {
+        parkingManagerService.getByCity("Poitier");
+        ParkingManager updated = parkingManagerService.updateParkingManager("Poitier", new ParkingManager("Poitier", new ArrayList<>()));
+        assertEquals(parkingManagerService.getByCity("Poitier"), updated);
+        parkingManagerService.deleteParkingManager("Poitier");
+        assertThrows(NonExistingParkingManagerException.class, () -> parkingManagerService.getByCity("Poitier"));
+    }
+
     @Test
     public void createParkingManager_shouldSucceed() {
         ISFields isFields1 = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
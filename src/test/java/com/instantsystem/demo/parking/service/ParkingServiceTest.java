@@ -2,7 +2,11 @@ package com.instantsystem.demo.parking.service;
 
 import com.instantsystem.demo.exception.RestCallException;
 import com.instantsystem.demo.exception.UnexpectedHttpMethodException;
+import com.instantsystem.demo.helper.PathDispatcher;
 import com.instantsystem.demo.helper.ResourceConverter;
+import com.instantsystem.demo.parking.cache.ParkingManagerCache;
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
 import com.instantsystem.demo.parking.entity.*;
 import com.instantsystem.demo.parking.exception.BuildParkingException;
 import com.instantsystem.demo.parking.exception.InstantSystemMapperException;
@@ -21,20 +25,35 @@ import org.springframework.core.io.Resource;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-@SpringBootTest
+@SpringBootTest(properties = "parking.polling.enabled=false")
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class ParkingServiceTest {
 
     @Autowired
     private ParkingManagerRepository parkingManagerRepository;
 
+    @Autowired
+    private ParkingManagerCache parkingManagerCache;
+
+    @Autowired
+    private ParkingSnapshotCache parkingSnapshotCache;
+
     @Autowired
     private ParkingService parkingService;
 
+    @Autowired
+    private ParkingSnapshotService parkingSnapshotService;
+
     @Value("classpath:poitierParkingList.json")
     private Resource poitierParkingList;
 
@@ -43,19 +62,27 @@ class ParkingServiceTest {
 
     private MockWebServer mockWebServer;
 
+    private PathDispatcher dispatcher;
+
     private ParkingManager manager;
 
+    private String baseUrl;
+
     @BeforeEach
     void initialize() throws IOException {
         // Set up the mock web server
         mockWebServer = new MockWebServer();
+        dispatcher = new PathDispatcher();
+        mockWebServer.setDispatcher(dispatcher);
         mockWebServer.start();
 
-        // Clean DB just in case
+        // Clean DB and cache just in case
         parkingManagerRepository.deleteAll();
+        parkingManagerCache.invalidateAll();
+        parkingSnapshotCache.invalidateAll();
 
         // Build test objects
-        String baseUrl = String.format("http://localhost:%s", mockWebServer.getPort());
+        baseUrl = String.format("http://localhost:%s", mockWebServer.getPort());
 
         // Populate DB
         ISFields isFields1 = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
@@ -64,8 +91,8 @@ class ParkingServiceTest {
         ISMapper isMapper1 = new ISMapper("JSONObject", "records", isFields1);
         ISMapper isMapper2 = new ISMapper("JSONObject", "records", isFields2);
 
-        RequestData requestData1 = new RequestData("get", baseUrl, null, isMapper1);
-        RequestData requestData2 = new RequestData("get", baseUrl, null, isMapper2);
+        RequestData requestData1 = new RequestData("get", baseUrl + "/list", null, isMapper1);
+        RequestData requestData2 = new RequestData("get", baseUrl + "/places", null, isMapper2);
 
         List<RequestData> requestsData = new ArrayList<>();
         requestsData.add(requestData1);
@@ -81,24 +108,152 @@ class ParkingServiceTest {
         mockWebServer.shutdown();
     }
 
+    private List<Parking> getParkings(String city, Double lat, Double lon, Double range) {
+        return parkingService.getAsyncParkings(city, lat, lon, range, null, 0, null).block().getValue().getParkings();
+    }
+
     @Test
     public void getParkings_noRange_shouldSucceed() {
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
-        List<Parking> parkings = parkingService.getParkings("Poitier");
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        List<Parking> parkings = getParkings("Poitier", null, null, null);
         assertEquals(parkings.size(), 28);
     }
 
+    @Test
+    public void getParkings_twice_shouldCallEndpointsOnce() {
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        assertEquals(getParkings("Poitier", null, null, null).size(), 28);
+        // Second call is served from the cache, nothing is enqueued anymore
+        assertEquals(getParkings("Poitier", null, null, null).size(), 28);
+        assertEquals(mockWebServer.getRequestCount(), 2);
+    }
+
+    @Test
+    public void buildSnapshot_staticEndpointFresh_shouldOnlyCallLiveEndpoint() {
+        ISFields isFields1 = new ISFields("fields.nom", "fields.nom", null, null, null, "fields.info", "fields.ylat", "fields.xlong");
+        ISFields isFields2 = new ISFields("fields.nom", "fields.nom", null, "fields.capacite", "fields.places_restantes", null, null, null);
+        List<RequestData> requestsData = new ArrayList<>();
+        requestsData.add(new RequestData("get", baseUrl + "/list", null, new ISMapper("JSONObject", "records", isFields1), 3600L));
+        requestsData.add(new RequestData("get", baseUrl + "/places", null, new ISMapper("JSONObject", "records", isFields2)));
+        ParkingManager staticAndLiveManager = new ParkingManager("Poitier", requestsData);
+
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces.replace("\"places_restantes\": 47.0", "\"places_restantes\": 12.0")));
+
+        ParkingSnapshot first = parkingSnapshotService.buildSnapshot(staticAndLiveManager, null);
+        ParkingSnapshot second = parkingSnapshotService.buildSnapshot(staticAndLiveManager, first);
+        assertEquals(mockWebServer.getRequestCount(), 3);
+        Parking parking = new Parking("PALAIS DE JUSTICE", "PALAIS DE JUSTICE", "Poitier", 70, 12, "Parking en enclos sous barri\u00e9res payant de 9h \u00e0 19h du lundi au samedi, gratuit dimanche et jours f\u00e9ri\u00e9s.", new Position(46.58595805, 0.35129543));
+        assertTrue(second.getParkings().contains(parking));
+        // The parkings of the first snapshot are not modified
+        assertEquals(first.getParkings().stream().filter(p -> p.getId().equals("PALAIS DE JUSTICE")).findFirst().get().getNbPlacesRemaining(), 47);
+    }
+
+    @Test
+    public void getSnapshot_concurrentRequests_shouldCallEndpointsOnce() {
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList).setHeadersDelay(300, TimeUnit.MILLISECONDS));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        long coalescedRequests = parkingSnapshotCache.getCoalescedRequestCount();
+
+        // The second request arrives while the build of the first one waits for the list endpoint
+        CompletableFuture<ParkingSnapshot> first = parkingSnapshotCache.getAsync("Poitier").toFuture();
+        CompletableFuture<ParkingSnapshot> second = parkingSnapshotCache.getAsync("Poitier").toFuture();
+        assertSame(first.join(), second.join());
+        assertEquals(mockWebServer.getRequestCount(), 2);
+        assertEquals(parkingSnapshotCache.getCoalescedRequestCount() - coalescedRequests, 1);
+    }
+
+    @Test
+    public void buildSnapshot_endpointFailing_shouldReusePreviousFeedAsStale() {
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(503));
+
+        ParkingSnapshot first = parkingSnapshotService.buildSnapshot(manager, null);
+        assertNull(first.getStaleSince());
+        ParkingSnapshot second = parkingSnapshotService.buildSnapshot(manager, first);
+        // The remaining places are the previous ones, stale since they were fetched
+        assertEquals(second.getStaleSince(), first.getFeeds().get(1).getFetchedAt());
+        assertTrue(second.getFeeds().get(1).isStale());
+        assertEquals(second.getParkings(), first.getParkings());
+
+        // A misconfigured endpoint (4xx) is reported, not replaced by its previous feed
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(404));
+        RestCallException notFound = assertThrows(RestCallException.class, () -> parkingSnapshotService.buildSnapshot(manager, first));
+        assertFalse(notFound.isUnavailable());
+
+        // Without previous feed the build fails
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(503));
+        assertThrows(RestCallException.class, () -> parkingSnapshotService.buildSnapshot(manager, null));
+    }
+
+    @Test
+    public void buildSnapshot_notModified_shouldReuseFeed() {
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList).setHeader("ETag", "\"list-v1\""));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(304));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces.replace("\"places_restantes\": 47.0", "\"places_restantes\": 12.0")));
+        long skippedMappings = parkingSnapshotService.getSkippedMappingCount();
+
+        ParkingSnapshot first = parkingSnapshotService.buildSnapshot(manager, null);
+        ParkingSnapshot second = parkingSnapshotService.buildSnapshot(manager, first);
+        assertEquals(mockWebServer.getRequestCount(), 4);
+        assertEquals(parkingSnapshotService.getSkippedMappingCount() - skippedMappings, 1);
+        // The parkings of the list are reused as extracted from the first response
+        assertSame(second.getFeeds().get(0).getParkings(), first.getFeeds().get(0).getParkings());
+        Parking parking = new Parking("PALAIS DE JUSTICE", "PALAIS DE JUSTICE", "Poitier", 70, 12, "Parking en enclos sous barri\u00e9res payant de 9h \u00e0 19h du lundi au samedi, gratuit dimanche et jours f\u00e9ri\u00e9s.", new Position(46.58595805, 0.35129543));
+        assertTrue(second.getParkings().contains(parking));
+    }
+
+    @Test
+    public void buildSnapshot_notModifiedWithoutPreviousFeed_shouldThrowRestCallException() {
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        // An endpoint, or a proxy, answering not modified to an unconditional call
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(304));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+
+        RestCallException exception = assertThrows(RestCallException.class, () -> parkingSnapshotService.buildSnapshot(manager, null));
+        assertFalse(exception.isUnavailable());
+    }
+
     @Test
     public void getParkingsByName_shouldSucceed() {
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        Parking parking = new Parking("PALAIS DE JUSTICE", "PALAIS DE JUSTICE", "Poitier", 70, 47, "Parking en enclos sous barri\u00e9res payant de 9h \u00e0 19h du lundi au samedi, gratuit dimanche et jours f\u00e9ri\u00e9s.", new Position(46.58595805, 0.35129543));
+        Parking parkingFromRequest = parkingService.getAsyncParking("Poitier", "PALAIS DE JUSTICE").block().getValue();
+        assertEquals(parking,parkingFromRequest);
+    }
+
+    @Test
+    public void getParkingsByName_firstEndpointSlowest_shouldSucceed() {
+        // The first endpoint answers last, its response must still be merged before the second one
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList).setHeadersDelay(500, TimeUnit.MILLISECONDS));
         String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
         Parking parking = new Parking("PALAIS DE JUSTICE", "PALAIS DE JUSTICE", "Poitier", 70, 47, "Parking en enclos sous barri\u00e9res payant de 9h \u00e0 19h du lundi au samedi, gratuit dimanche et jours f\u00e9ri\u00e9s.", new Position(46.58595805, 0.35129543));
-        Parking parkingFromRequest = parkingService.getParking("Poitier", "PALAIS DE JUSTICE");
+        Parking parkingFromRequest = parkingService.getAsyncParking("Poitier", "PALAIS DE JUSTICE").block().getValue();
         assertEquals(parking,parkingFromRequest);
     }
 
@@ -106,10 +261,10 @@ class ParkingServiceTest {
     public void getParkings_inRange_shouldSucceed() {
         Position position = new Position(46.58595805, 0.35129543);
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         String s_poitierParkingPlaces = ResourceConverter.convertResourceToString(poitierParkingPlaces);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
-        List<Parking> parkings = parkingService.getParkings("Poitier", position.getLatitude(), position.getLongitude(), 0.5);
+        dispatcher.enqueue("/places", new MockResponse().setResponseCode(200).setBody(s_poitierParkingPlaces));
+        List<Parking> parkings = getParkings("Poitier", position.getLatitude(), position.getLongitude(), 0.5);
         assertEquals(parkings.size(), 5);
     }
 
@@ -118,9 +273,9 @@ class ParkingServiceTest {
         manager.getRequestsData().get(0).setUrl("www.InstantSystem-False-url.aze");
         parkingManagerRepository.save(manager);
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         RestCallException thrown = assertThrows(RestCallException.class, () -> {
-            List<Parking> parkings = parkingService.getParkings("Poitier");
+            List<Parking> parkings = getParkings("Poitier", null, null, null);
         }, "RestCallException was expected");
     }
 
@@ -129,17 +284,17 @@ class ParkingServiceTest {
         manager.getRequestsData().get(0).setMethod("whatMethod?");
         parkingManagerRepository.save(manager);
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         UnexpectedHttpMethodException thrown = assertThrows(UnexpectedHttpMethodException.class, () -> {
-            List<Parking> parkings = parkingService.getParkings("Poitier");
+            List<Parking> parkings = getParkings("Poitier", null, null, null);
         }, "UnexpectedHttpMethodException was expected");
     }
 
     @Test
     public void getParkings_shouldFail_BodyParseError() {
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("This body is not a json, will trigger an Exception"));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody("This body is not a json, will trigger an Exception"));
         BuildParkingException thrown = assertThrows(BuildParkingException.class, () -> {
-            List<Parking> parkings = parkingService.getParkings("Poitier");
+            List<Parking> parkings = getParkings("Poitier", null, null, null);
         }, "BuildParkingException was expected");
     }
 
@@ -148,9 +303,9 @@ class ParkingServiceTest {
         manager.getRequestsData().get(0).getiSMapper().getiSFields().setName("fields.unknown");
         parkingManagerRepository.save(manager);
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
-        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        dispatcher.enqueue("/list", new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
         InstantSystemMapperException thrown = assertThrows(InstantSystemMapperException.class, () -> {
-            List<Parking> parkings = parkingService.getParkings("Poitier");
+            List<Parking> parkings = getParkings("Poitier", null, null, null);
         }, "InstantSystemMapperException was expected");
     }
 }
\ No newline at end of file
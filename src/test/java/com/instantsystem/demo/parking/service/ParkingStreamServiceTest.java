@@ -0,0 +1,114 @@
+package com.instantsystem.demo.parking.service;
+
+import com.instantsystem.demo.parking.cache.ParkingSnapshot;
+import com.instantsystem.demo.parking.cache.ParkingSnapshotCache;
+import com.instantsystem.demo.parking.entity.Parking;
+import com.instantsystem.demo.parking.entity.ParkingUpdate;
+import com.instantsystem.demo.parking.entity.Position;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class ParkingStreamServiceTest {
+
+    private final ParkingSnapshotCache parkingSnapshotCache = mock(ParkingSnapshotCache.class);
+
+    private final Sinks.Many<ParkingSnapshot> updates = Sinks.many().multicast().directBestEffort();
+
+    private final ParkingSnapshot first = new ParkingSnapshot("Poitier", Arrays.asList(parking("A", 10), parking("B", 20), parking("C", 30)), Instant.now());
+
+    @BeforeEach
+    void initialize() {
+        when(parkingSnapshotCache.getAsync("Poitier")).thenReturn(Mono.just(first));
+        when(parkingSnapshotCache.getIfPresent("Poitier")).thenReturn(first);
+        when(parkingSnapshotCache.getUpdates()).thenReturn(updates.asFlux());
+    }
+
+    @Test
+    public void streamParkings_shouldSendSnapshotThenChanges() {
+        ParkingStreamService service = new ParkingStreamService(parkingSnapshotCache, Duration.ofMinutes(1), 16);
+        List<ParkingUpdate> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = service.streamParkings("Poitier").subscribe(received::add);
+
+        // B changed, C removed, D added
+        updates.tryEmitNext(new ParkingSnapshot("Poitier", Arrays.asList(parking("A", 10), parking("B", 19), parking("D", 5)), Instant.now()));
+        // Another city, and a rebuild without change
+        updates.tryEmitNext(new ParkingSnapshot("Paris", Collections.singletonList(parking("A", 1)), Instant.now()));
+        updates.tryEmitNext(new ParkingSnapshot("Poitier", Arrays.asList(parking("A", 10), parking("B", 19), parking("D", 5)), Instant.now()));
+        subscription.dispose();
+
+        assertEquals(received.size(), 2);
+        assertEquals(received.get(0).getType(), ParkingUpdate.Type.SNAPSHOT);
+        assertEquals(received.get(0).getParkings(), first.getParkings());
+        assertEquals(received.get(1).getType(), ParkingUpdate.Type.CHANGES);
+        assertEquals(received.get(1).getParkings(), Arrays.asList(parking("B", 19), parking("D", 5)));
+        assertEquals(received.get(1).getRemoved(), Collections.singletonList("C"));
+    }
+
+    @Test
+    public void streamParkings_slowSubscriber_shouldBeDropped() throws InterruptedException {
+        ParkingStreamService service = new ParkingStreamService(parkingSnapshotCache, Duration.ofMinutes(1), 2);
+        CountDownLatch completed = new CountDownLatch(1);
+        // Only requests the first update
+        service.streamParkings("Poitier").subscribe(new BaseSubscriber<ParkingUpdate>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                completed.countDown();
+            }
+        });
+        List<ParkingUpdate> received = new CopyOnWriteArrayList<>();
+        Disposable fastSubscription = service.streamParkings("Poitier").subscribe(received::add);
+
+        for (int places = 0; places < 4; places++) {
+            updates.tryEmitNext(new ParkingSnapshot("Poitier", Collections.singletonList(parking("A", places)), Instant.now()));
+        }
+
+        assertTrue(completed.await(1, TimeUnit.SECONDS));
+        // The other subscriber still gets all the updates
+        assertEquals(received.size(), 5);
+        fastSubscription.dispose();
+    }
+
+    @Test
+    public void streamParkings_manySubscribers_shouldShareRefresh() {
+        when(parkingSnapshotCache.getIfPresent("Poitier")).thenReturn(null);
+        ParkingStreamService service = new ParkingStreamService(parkingSnapshotCache, Duration.ofMillis(500), 16);
+        Disposable subscription1 = service.streamParkings("Poitier").subscribe();
+        Disposable subscription2 = service.streamParkings("Poitier").subscribe();
+
+        // One refresh for both subscribers
+        verify(parkingSnapshotCache, after(750).times(1)).refresh("Poitier");
+
+        // No more refresh without subscriber
+        subscription1.dispose();
+        subscription2.dispose();
+        clearInvocations(parkingSnapshotCache);
+        verify(parkingSnapshotCache, after(750).never()).refresh("Poitier");
+    }
+
+    private static Parking parking(String id, int placesRemaining) {
+        return new Parking(id, id, "Poitier", 50, placesRemaining, null, new Position(46.58, 0.34));
+    }
+}
@@ -0,0 +1,21 @@
+package com.instantsystem.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkheadTest {
+
+    @Test
+    public void tryAcquire_full_shouldReject() {
+        Bulkhead bulkhead = new Bulkhead(2);
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+        assertEquals(bulkhead.getRunningCalls(), 2);
+    }
+}
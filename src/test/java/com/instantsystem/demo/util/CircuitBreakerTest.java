@@ -0,0 +1,73 @@
+package com.instantsystem.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    @Test
+    public void onFailure_underThreshold_shouldStayClosed() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(3, Duration.ofMinutes(1));
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void onFailure_threshold_shouldOpen() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(3, Duration.ofMinutes(1));
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void tryAcquire_afterOpenDuration_shouldLetOneTrialThrough() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, Duration.ofMillis(50));
+        circuitBreaker.onFailure();
+        Thread.sleep(60);
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        // Only one trial at a time
+        assertFalse(circuitBreaker.tryAcquire());
+
+        // A failed trial opens the circuit again, a successful one closes it
+        circuitBreaker.onFailure();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+        Thread.sleep(60);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess();
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void release_trial_shouldLetTheNextCallBeTheTrial() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, Duration.ofMillis(200));
+        circuitBreaker.onFailure();
+        Thread.sleep(250);
+        CircuitBreaker.Permit trial = circuitBreaker.acquire();
+        assertEquals(trial, CircuitBreaker.Permit.TRIAL);
+        assertEquals(circuitBreaker.acquire(), CircuitBreaker.Permit.REJECTED);
+
+        // The trial was rejected by the bulkhead or cancelled, without reaching the url
+        circuitBreaker.release(trial);
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        assertEquals(circuitBreaker.acquire(), CircuitBreaker.Permit.TRIAL);
+
+        // Only the trial is released
+        circuitBreaker.release(CircuitBreaker.Permit.CALL);
+        assertEquals(circuitBreaker.acquire(), CircuitBreaker.Permit.REJECTED);
+    }
+}
@@ -3,20 +3,84 @@ package com.instantsystem.demo.util;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Random;
 
-@SpringBootTest
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "parking.polling.enabled=false")
 class DistanceCalculatorTest {
 
     @Test
     public void distanceKM_shouldSucceed() {
-        double distance = DistanceCalculator.distance(46.58595805, 0.35129543, 46.57505318, 0.33712631, "K");
-        assertEquals(distance, 1.6256619596830109);
+        double distance = DistanceCalculator.distance(46.58595805, 0.35129543, 46.57505318, 0.33712631, DistanceUnit.KILOMETERS);
+        // Value of the previous law of cosines implementation, its acos was off by about 2 micrometers
+        assertEquals(distance, 1.6256619596830109, 1e-8);
     }
 
     @Test
     public void distanceKM_positionEquals_shouldReturn0() {
-        double distance = DistanceCalculator.distance(46.58595805, 0.35129543, 46.58595805, 0.35129543, "K");
+        double distance = DistanceCalculator.distance(46.58595805, 0.35129543, 46.58595805, 0.35129543, DistanceUnit.KILOMETERS);
         assertEquals(distance, 0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void distance_closePositions_shouldNotBeNaN() {
+        // 1e-9 degree of longitude is about 0.08 mm at this latitude
+        double distance = DistanceCalculator.distance(46.58595805, 0.35129543, 46.58595805, 0.351295431, DistanceUnit.KILOMETERS);
+        assertFalse(Double.isNaN(distance));
+        assertEquals(distance, 7.65e-8, 1e-9);
+    }
+
+    @Test
+    public void distance_antipodes_shouldBeHalfCircumference() {
+        double distance = DistanceCalculator.distance(46.58595805, 0.35129543, -46.58595805, -179.64870457, DistanceUnit.KILOMETERS);
+        assertEquals(distance, Math.PI * DistanceCalculator.EARTH_RADIUS_KM, 1e-6);
+    }
+
+    @Test
+    public void distance_units_shouldConvert() {
+        double kilometers = DistanceCalculator.distance(46.58595805, 0.35129543, 46.57505318, 0.33712631, DistanceUnit.KILOMETERS);
+        assertEquals(DistanceCalculator.distance(46.58595805, 0.35129543, 46.57505318, 0.33712631, DistanceUnit.MILES), kilometers / 1.609344, 1e-12);
+        assertEquals(DistanceCalculator.distance(46.58595805, 0.35129543, 46.57505318, 0.33712631, DistanceUnit.NAUTICAL_MILES), kilometers / 1.852, 1e-12);
+        assertEquals(DistanceUnit.MILES.toKilometers(DistanceUnit.MILES.fromKilometers(kilometers)), kilometers, 1e-12);
+    }
+
+    @Test
+    public void fastDistance_shouldBeInErrorBound() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double lat = (random.nextDouble() - 0.5) * 140;
+            double lon = (random.nextDouble() - 0.5) * 360;
+            // Up to about 100 km from the position, across the antimeridian too
+            double lat2 = lat + (random.nextDouble() - 0.5) * 1.2;
+            double lon2 = lon + (random.nextDouble() - 0.5) * 1.2 / Math.cos(Math.toRadians(Math.abs(lat) + 0.6));
+            if (lon2 > 180) {
+                lon2 -= 360;
+            }
+            double exact = DistanceCalculator.distance(lat, lon, lat2, lon2, DistanceUnit.KILOMETERS);
+            if (exact > 100) {
+                continue;
+            }
+            double fast = DistanceCalculator.fastDistance(lat, lon, lat2, lon2, DistanceUnit.KILOMETERS);
+            assertTrue(Math.abs(fast - exact) <= exact * 0.001 + 1e-9, "Error too large at " + lat + ", " + lon);
+            if (exact <= 10) {
+                assertTrue(Math.abs(fast - exact) <= exact * 0.0001 + 1e-9, "Error too large at " + lat + ", " + lon);
+            }
+        }
+    }
+
+    @Test
+    public void distances_shouldMatchDistance() {
+        double[] lats = {46.57505318, 46.58595805, 48.85, -33.86};
+        double[] lons = {0.33712631, 0.35129543, 2.35, 151.2};
+        double[] distances = new double[lats.length];
+        double[] fastDistances = new double[lats.length];
+        DistanceCalculator.distances(46.58595805, 0.35129543, lats, lons, distances, DistanceUnit.MILES);
+        DistanceCalculator.fastDistances(46.58595805, 0.35129543, lats, lons, fastDistances, DistanceUnit.MILES);
+        for (int i = 0; i < lats.length; i++) {
+            assertEquals(distances[i], DistanceCalculator.distance(46.58595805, 0.35129543, lats[i], lons[i], DistanceUnit.MILES));
+            assertEquals(fastDistances[i], DistanceCalculator.fastDistance(46.58595805, 0.35129543, lats[i], lons[i], DistanceUnit.MILES));
+        }
+        assertThrows(IllegalArgumentException.class, () -> DistanceCalculator.distances(0, 0, lats, new double[1], distances, DistanceUnit.KILOMETERS));
+    }
+}
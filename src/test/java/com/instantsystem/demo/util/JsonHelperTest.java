@@ -1,5 +1,6 @@
 package com.instantsystem.demo.util;
 
+import com.jayway.jsonpath.DocumentContext;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,6 +8,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class JsonHelperTest {
 
@@ -69,4 +71,17 @@ class JsonHelperTest {
         assertNotNull(integerField);
         assertEquals(integerField, 321);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compilePath_shouldBeCached() {
+        assertSame(JsonHelper.compilePath("objectField.objectStringField"), JsonHelper.compilePath("objectField.objectStringField"));
+    }
+
+    @Test
+    public void extractFromParsedDocument() {
+        DocumentContext document = JsonHelper.parse(jsonObject);
+        assertEquals(JsonHelper.extractStringValueFromJson(document, JsonHelper.compilePath("objectField.objectStringField")), "value2");
+        assertEquals(JsonHelper.extractDoubleValueFromJson(document, JsonHelper.compilePath("objectField.objectDoubleField")), 987.654);
+        assertEquals(JsonHelper.extractIntegerValueFromJson(document, JsonHelper.compilePath("objectField.objectIntegerField")), 321);
+    }
+}
@@ -0,0 +1,35 @@
+package com.instantsystem.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSamplerTest {
+
+    @Test
+    public void sample_shouldLetOneCallOutOfRatePass() {
+        LogSampler sampler = new LogSampler(10);
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sampler.sample()) {
+                sampled++;
+            }
+        }
+        assertEquals(sampled, 10);
+    }
+
+    @Test
+    public void sample_rateOne_shouldSampleAll() {
+        LogSampler sampler = new LogSampler(1);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(sampler.sample());
+        }
+    }
+
+    @Test
+    public void newSampler_invalidRate_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new LogSampler(0));
+    }
+}
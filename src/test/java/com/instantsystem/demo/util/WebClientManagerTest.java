@@ -5,24 +5,36 @@ import com.instantsystem.demo.exception.UnexpectedHttpMethodException;
 import com.instantsystem.demo.helper.ResourceConverter;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.Resource;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-@SpringBootTest
+@SpringBootTest(properties = "parking.polling.enabled=false")
 class WebClientManagerTest {
 
     @Value("classpath:poitierParkingList.json")
     private Resource poitierParkingList;
 
+    @Autowired
+    private WebClientManager manager;
+
     private MockWebServer mockWebServer;
 
     private String baseUrl;
@@ -45,7 +57,6 @@ class WebClientManagerTest {
     public void makeHttpCall_get_shouldSucceed() {
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
         mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
-        WebClientManager manager = new WebClientManager();
         String response = manager.makeHttpCall(baseUrl, "get", "poitier");
         assertNotNull(response);
     }
@@ -54,7 +65,6 @@ class WebClientManagerTest {
     public void makeHttpCall_getUpperCase_shouldSucceed() {
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
         mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
-        WebClientManager manager = new WebClientManager();
         String response = manager.makeHttpCall(baseUrl, "GET", "poitier");
         assertNotNull(response);
     }
@@ -63,14 +73,101 @@ class WebClientManagerTest {
     public void makeHttpCall_getRandomCase_shouldSucceed() {
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
         mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
-        WebClientManager manager = new WebClientManager();
         String response = manager.makeHttpCall(baseUrl, "GeT", "poitier");
         assertNotNull(response);
     }
 
+    @Test
+    public void makeHttpCall_twice_shouldReuseConnection() throws InterruptedException {
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
+        manager.makeHttpCall(baseUrl, "get", "poitier");
+        // The connection goes back to the pool asynchronously once the body is read
+        Thread.sleep(200);
+        manager.makeHttpCall(baseUrl, "get", "poitier");
+        mockWebServer.takeRequest();
+        // Sequence number is the index of the request on its connection, 1 means the second call used the same one
+        assertEquals(1, mockWebServer.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void makeConditionalHttpCall_notModified_shouldReuseValidators() throws InterruptedException {
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList)
+                .setHeader("ETag", "\"v1\"").setHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+        long notModified = manager.getNotModifiedCount();
+        long bytesSaved = manager.getBytesSaved();
+
+        UpstreamResponse first = manager.makeAsyncConditionalHttpCall(baseUrl, "get", "poitier", null, null).block();
+        assertFalse(first.isNotModified());
+        assertEquals(new String(first.getBody(), StandardCharsets.UTF_8), s_poitierParkingList);
+        assertEquals(first.getValidators().getETag(), "\"v1\"");
+        UpstreamResponse second = manager.makeAsyncConditionalHttpCall(baseUrl, "get", "poitier", first.getValidators(), null).block();
+        assertTrue(second.isNotModified());
+        assertNull(second.getBody());
+
+        mockWebServer.takeRequest();
+        RecordedRequest conditionalRequest = mockWebServer.takeRequest();
+        assertEquals(conditionalRequest.getHeader("If-None-Match"), "\"v1\"");
+        assertEquals(conditionalRequest.getHeader("If-Modified-Since"), "Wed, 21 Oct 2015 07:28:00 GMT");
+        assertEquals(manager.getNotModifiedCount() - notModified, 1);
+        assertEquals(manager.getBytesSaved() - bytesSaved, first.getValidators().getContentLength());
+    }
+
+    @Test
+    public void makeConditionalHttpCall_chunkedNotModified_shouldCountBytesSaved() {
+        // Without Content-Length the size of the body is counted in bytes, the accented characters take 2 of them
+        String body = "{\"records\": [{\"nom\": \"H\u00f4tel de Ville\", \"info\": \"Gratuit les jours f\u00e9ri\u00e9s\"}]}";
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setChunkedBody(body, 16).setHeader("ETag", "\"v1\""));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+        long bytesSaved = manager.getBytesSaved();
+
+        UpstreamResponse first = manager.makeAsyncConditionalHttpCall(baseUrl, "get", "poitier", null, null).block();
+        manager.makeAsyncConditionalHttpCall(baseUrl, "get", "poitier", first.getValidators(), null).block();
+        assertEquals(first.getValidators().getContentLength(), body.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(manager.getBytesSaved() - bytesSaved, body.length() + 3);
+    }
+
+    @Test
+    public void makeConditionalHttpCall_slowerThanTimeout_shouldFail() {
+        String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList).setHeadersDelay(1, TimeUnit.SECONDS));
+        assertThrows(RestCallException.class, () -> manager.makeAsyncConditionalHttpCall(baseUrl, "get", "poitier", null, Duration.ofMillis(100)).block());
+    }
+
+    @Test
+    public void makeConditionalHttpCall_repeatedFailures_shouldOpenCircuit() {
+        for (int i = 0; i < 5; i++) {
+            mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+            assertThrows(RestCallException.class, () -> manager.makeAsyncConditionalHttpCall(baseUrl, "get", "poitier", null, null).block());
+        }
+        assertEquals(manager.getCircuitState(baseUrl), CircuitBreaker.State.OPEN);
+        long rejected = manager.getRejectedCount();
+
+        // Rejected without reaching the url
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+        RestCallException thrown = assertThrows(RestCallException.class, () -> manager.makeAsyncConditionalHttpCall(baseUrl, "get", "poitier", null, null).block());
+        assertEquals(thrown.getMessage(), String.format("Circuit open for the url : %s, for the city : poitier", baseUrl));
+        assertEquals(mockWebServer.getRequestCount(), 5);
+        assertEquals(manager.getRejectedCount() - rejected, 1);
+    }
+
+    @Test
+    public void makeConditionalHttpCall_repeatedClientErrors_shouldNotOpenCircuit() {
+        for (int i = 0; i < 6; i++) {
+            mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+            RestCallException thrown = assertThrows(RestCallException.class, () -> manager.makeAsyncConditionalHttpCall(baseUrl, "get", "poitier", null, null).block());
+            assertFalse(thrown.isUnavailable());
+        }
+        // The host answers, it is still called
+        assertEquals(manager.getCircuitState(baseUrl), CircuitBreaker.State.CLOSED);
+        assertEquals(mockWebServer.getRequestCount(), 6);
+    }
+
     @Test
     public void makeHttpCall_wrongMethod_shouldSucceed() {
-        WebClientManager manager = new WebClientManager();
         UnexpectedHttpMethodException thrown = assertThrows(UnexpectedHttpMethodException.class, () -> {
             String response = manager.makeHttpCall(baseUrl, "whatMethod", "poitier");
         }, "UnexpectedHttpMethodException was expected");
@@ -80,7 +177,6 @@ class WebClientManagerTest {
     public void makeHttpCall_wrongUrl_shouldSucceed() {
         String s_poitierParkingList = ResourceConverter.convertResourceToString(poitierParkingList);
         mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody(s_poitierParkingList));
-        WebClientManager manager = new WebClientManager();
         RestCallException thrown = assertThrows(RestCallException.class, () -> {
             String response = manager.makeHttpCall("www.someUrl-instantSystem.aze", "get", "poitier");
         }, "RestCallException was expected");